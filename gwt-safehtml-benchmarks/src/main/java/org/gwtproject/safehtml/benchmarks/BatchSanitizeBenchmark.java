@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.gwtproject.safehtml.shared.HtmlSanitizer;
+import org.gwtproject.safehtml.shared.HtmlSanitizers;
+import org.gwtproject.safehtml.shared.SafeHtml;
+import org.gwtproject.safehtml.shared.SimpleHtmlSanitizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how sanitizing a batch of short comments scales with the number of cores, comparing a
+ * loop calling {@link SimpleHtmlSanitizer#sanitizeHtml(String)} against {@link
+ * HtmlSanitizers#sanitizeAll(ForkJoinPool, HtmlSanitizer, List)} and {@link
+ * HtmlSanitizers#sanitizeAll(java.util.concurrent.Executor, int, HtmlSanitizer, List)}.
+ *
+ * <p>Scores are in comments per millisecond. The parallel variants run on a {@link ForkJoinPool}
+ * or a fixed thread pool of {@code parallelism} threads; the sequential one does not depend on it
+ * and serves as the baseline. Scaling is bounded by the number of cores of the machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchSanitizeBenchmark {
+
+  private static final int COMMENTS = 100000;
+
+  /** The number of threads of the pools running the parallel variants. */
+  @Param({"1", "2", "4", "8"})
+  public int parallelism;
+
+  private List<String> comments;
+  private ForkJoinPool pool;
+  private ExecutorService executor;
+
+  @Setup
+  public void setUp() {
+    comments = new ArrayList<>(COMMENTS);
+    for (int i = 0; i < COMMENTS; i++) {
+      comments.add(
+          i % 4 == 0
+              ? "<b>Great</b> post #" + i + " & <script>alert(1)</script>"
+              : "Thanks <i>" + i + "</i>, this <3 is <em>so</em> helpful");
+    }
+    pool = new ForkJoinPool(parallelism);
+    // The calling thread is one of the threads sanitizing the batch.
+    executor = Executors.newFixedThreadPool(Math.max(1, parallelism - 1));
+    List<SafeHtml> expected = sequential();
+    if (!expected.equals(forkJoinPool()) || !expected.equals(executor())) {
+      throw new IllegalStateException("Implementations disagree");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+    executor.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(COMMENTS)
+  public List<SafeHtml> sequential() {
+    List<SafeHtml> results = new ArrayList<>(comments.size());
+    for (String comment : comments) {
+      results.add(SimpleHtmlSanitizer.sanitizeHtml(comment));
+    }
+    return results;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(COMMENTS)
+  public List<SafeHtml> forkJoinPool() {
+    return HtmlSanitizers.sanitizeAll(pool, SimpleHtmlSanitizer.getInstance(), comments);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(COMMENTS)
+  public List<SafeHtml> executor() {
+    return HtmlSanitizers.sanitizeAll(
+        executor, parallelism, SimpleHtmlSanitizer.getInstance(), comments);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.gwtproject.safehtml.shared.SafeHtmlUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link SafeHtmlUtils#htmlEscapeAllowEntities(String)} against the split-and-match
+ * implementation it replaced, on inputs with no, few and many ampersands.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlEscapeAllowEntitiesBenchmark {
+
+  /** The kind of text to escape. */
+  @Param({"plain", "entities", "ampersands"})
+  public String input;
+
+  /** Approximate length of the text to escape. */
+  @Param({"64", "4096"})
+  public int length;
+
+  private String text;
+
+  @Setup
+  public void setUp() {
+    String unit;
+    switch (input) {
+      case "plain":
+        unit = "The quick brown fox jumps over the lazy dog. ";
+        break;
+      case "entities":
+        unit = "Fish &amp; chips &#8212; &lt;b&gt; &#x201C;quoted&#x201D; ";
+        break;
+      case "ampersands":
+        unit = "a&b && c & d &; <&> &x &#; ";
+        break;
+      default:
+        throw new IllegalArgumentException(input);
+    }
+    StringBuilder sb = new StringBuilder(length + unit.length());
+    while (sb.length() < length) {
+      sb.append(unit);
+    }
+    text = sb.toString();
+    if (!LegacyEscaping.htmlEscapeAllowEntities(text)
+        .equals(SafeHtmlUtils.htmlEscapeAllowEntities(text))) {
+      throw new IllegalStateException("Implementations disagree on " + text);
+    }
+  }
+
+  @Benchmark
+  public String legacy() {
+    return LegacyEscaping.htmlEscapeAllowEntities(text);
+  }
+
+  @Benchmark
+  public String current() {
+    return SafeHtmlUtils.htmlEscapeAllowEntities(text);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.benchmarks;
+
+import org.gwtproject.safehtml.shared.SafeHtmlUtils;
+
+/**
+ * Baseline implementations kept around to compare the current ones against. They reproduce the
+ * algorithms {@link SafeHtmlUtils} used before being rewritten, and must produce the same output.
+ */
+final class LegacyEscaping {
+
+  private static final String HTML_CHARS = "[&<>'\"]";
+  private static final String HTML_ENTITY_REGEX = "[a-z]+|#[0-9]+|#x[0-9a-fA-F]+";
+
+  private LegacyEscaping() {}
+
+  /**
+   * The split-and-match implementation of {@link SafeHtmlUtils#htmlEscapeAllowEntities(String)}:
+   * splits the input on every ampersand, then matches a regular expression against the start of
+   * each segment.
+   */
+  static String htmlEscapeAllowEntities(String text) {
+    StringBuilder escaped = new StringBuilder();
+
+    boolean firstSegment = true;
+    for (String segment : text.split("&", -1)) {
+      if (firstSegment) {
+        firstSegment = false;
+        escaped.append(htmlEscape(segment));
+        continue;
+      }
+
+      int entityEnd = segment.indexOf(';');
+      if (entityEnd > 0 && segment.substring(0, entityEnd).matches(HTML_ENTITY_REGEX)) {
+        escaped.append("&").append(segment.substring(0, entityEnd + 1));
+        escaped.append(htmlEscape(segment.substring(entityEnd + 1)));
+      } else {
+        escaped.append("&amp;").append(htmlEscape(segment));
+      }
+    }
+
+    return escaped.toString();
+  }
+
+  /**
+   * The replace-per-character implementation of {@link SafeHtmlUtils#htmlEscape(String)}: matches
+   * a regular expression against the whole input, then replaces each special character in turn.
+   */
+  private static String htmlEscape(String s) {
+    if (!s.matches("[\\s\\S]*" + HTML_CHARS + "[\\s\\S]*")) {
+      return s;
+    }
+    if (s.indexOf("&") != -1) {
+      s = s.replaceAll("&", "&amp;");
+    }
+    if (s.indexOf("<") != -1) {
+      s = s.replaceAll("<", "&lt;");
+    }
+    if (s.indexOf(">") != -1) {
+      s = s.replaceAll(">", "&gt;");
+    }
+    if (s.indexOf("\"") != -1) {
+      s = s.replaceAll("\"", "&quot;");
+    }
+    if (s.indexOf("'") != -1) {
+      s = s.replaceAll("'", "&#39;");
+    }
+    return s;
+  }
+}
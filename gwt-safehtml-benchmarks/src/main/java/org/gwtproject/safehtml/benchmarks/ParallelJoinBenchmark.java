@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.gwtproject.safehtml.shared.SafeHtml;
+import org.gwtproject.safehtml.shared.SafeHtmlBuilder;
+import org.gwtproject.safehtml.shared.SafeHtmlCollectors;
+import org.gwtproject.safehtml.shared.SafeHtmlUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how rendering the rows of a large grid scales with the number of cores, comparing a
+ * single {@link SafeHtmlBuilder} looping over the rows against {@link
+ * SafeHtmlCollectors#joining(SafeHtml, SafeHtml, SafeHtml)} on a parallel stream and {@link
+ * SafeHtmlCollectors#joinParallel(ForkJoinPool, List, java.util.function.Function, SafeHtml,
+ * SafeHtml, SafeHtml)}.
+ *
+ * <p>The parallel variants run on a {@link ForkJoinPool} of {@code parallelism} threads; the
+ * sequential one does not depend on it and serves as the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelJoinBenchmark {
+
+  private static final SafeHtml SEPARATOR = SafeHtmlUtils.fromSafeConstant("\n");
+  private static final SafeHtml PREFIX = SafeHtmlUtils.fromSafeConstant("<table>");
+  private static final SafeHtml SUFFIX = SafeHtmlUtils.fromSafeConstant("</table>");
+
+  /** The number of rows to render. */
+  @Param({"50000"})
+  public int rows;
+
+  /** The number of threads of the pool running the parallel variants. */
+  @Param({"1", "2", "4", "8"})
+  public int parallelism;
+
+  private List<Row> data;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setUp() {
+    data = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      data.add(new Row(i, "Customer <" + i + "> & Sons", "Note: \"" + i + "\" isn't 'quoted'"));
+    }
+    pool = new ForkJoinPool(parallelism);
+    String expected = sequential();
+    if (!expected.equals(collector()) || !expected.equals(joinParallel())) {
+      throw new IllegalStateException("Implementations disagree");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public String sequential() {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder().append(PREFIX);
+    for (int i = 0; i < data.size(); i++) {
+      if (i > 0) {
+        builder.append(SEPARATOR);
+      }
+      builder.append(render(data.get(i)));
+    }
+    return builder.append(SUFFIX).toSafeHtml().asString();
+  }
+
+  @Benchmark
+  public String collector() {
+    // A parallel stream started from a pool's thread runs on that pool.
+    return pool.submit(
+            () ->
+                data.parallelStream()
+                    .map(ParallelJoinBenchmark::render)
+                    .collect(SafeHtmlCollectors.joining(SEPARATOR, PREFIX, SUFFIX))
+                    .asString())
+        .join();
+  }
+
+  @Benchmark
+  public String joinParallel() {
+    return SafeHtmlCollectors.joinParallel(
+            pool, data, ParallelJoinBenchmark::render, SEPARATOR, PREFIX, SUFFIX)
+        .asString();
+  }
+
+  /** Renders a row, as a template method of a grid would. */
+  private static SafeHtml render(Row row) {
+    return new SafeHtmlBuilder(128)
+        .appendHtmlConstant("<tr><td>")
+        .append(row.id)
+        .appendHtmlConstant("</td><td>")
+        .appendEscaped(row.name)
+        .appendHtmlConstant("</td><td>")
+        .appendEscaped(row.note)
+        .appendHtmlConstant("</td></tr>")
+        .toSafeHtml();
+  }
+
+  private static final class Row {
+    final int id;
+    final String name;
+    final String note;
+
+    Row(int id, String name, String note) {
+      this.id = id;
+      this.name = name;
+      this.note = note;
+    }
+  }
+}
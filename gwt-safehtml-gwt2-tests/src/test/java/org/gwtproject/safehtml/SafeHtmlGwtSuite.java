@@ -33,6 +33,7 @@ public class SafeHtmlGwtSuite {
     suite.addTestSuite(GwtSafeHtmlHostedModeUtilsTest.class);
     suite.addTestSuite(GwtUriUtilsTest.class);
     suite.addTestSuite(GwtSafeUriHostedModeUtilsTest.class);
+    suite.addTestSuite(GwtEscapingTest.class);
 
     return suite;
   }
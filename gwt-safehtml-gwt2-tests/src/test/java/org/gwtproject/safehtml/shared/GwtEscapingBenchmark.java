@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Browser-side benchmark of the JavaScript implementations of {@link SafeHtmlUtils#htmlEscape} and
+ * {@link UriUtils#encode}, compared with the implementations they replaced.
+ *
+ * <p>This is not part of {@code SafeHtmlGwtSuite}, so that builds don't pay for it; run it on its
+ * own in the browsers of interest. Each benchmark fails if the current implementation is
+ * noticeably slower than the one it replaced, with both timings in the failure message.
+ * Equivalence is checked by {@link GwtEscapingTest}.
+ */
+public class GwtEscapingBenchmark extends GWTTestCase {
+
+  /** Typical grid cell contents, with a meta-character every few characters. */
+  static final String CELL = "Smith & Sons <Ltd> \"quoted\" O'Brien ";
+
+  /** A URI with square brackets in its query, as used by some REST APIs. */
+  static final String URI = "http://example.com/grid?filter[name]=a b&sort[0]=asc";
+
+  private static final int ITERATIONS = 400;
+
+  /** How much slower than the legacy implementation the current one may be, to allow for noise. */
+  private static final double TOLERANCE = 1.1;
+
+  public void testHtmlEscape() {
+    String text = repeat(CELL, 1000);
+    double legacy = time(() -> LegacyJsEscaping.htmlEscape(text));
+    double current = time(() -> SafeHtmlUtils.htmlEscape(text));
+    assertNotSlower("htmlEscape", legacy, current);
+  }
+
+  public void testEncode() {
+    String uri = repeat(URI, 100);
+    double legacy = time(() -> LegacyJsEscaping.encode(uri));
+    double current = time(() -> UriUtils.encode(uri));
+    assertNotSlower("encode", legacy, current);
+  }
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.safehtml.SafeHtmlTestsModule";
+  }
+
+  /** Returns the average time in milliseconds of a run of {@code task}, after a warm-up. */
+  private static double time(Runnable task) {
+    for (int i = 0; i < ITERATIONS; i++) {
+      task.run();
+    }
+    double start = Duration.currentTimeMillis();
+    for (int i = 0; i < ITERATIONS; i++) {
+      task.run();
+    }
+    return (Duration.currentTimeMillis() - start) / ITERATIONS;
+  }
+
+  private static void assertNotSlower(String name, double legacy, double current) {
+    assertTrue(
+        name + ": legacy " + legacy + " ms, current " + current + " ms",
+        current <= legacy * TOLERANCE);
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder sb = new StringBuilder(s.length() * count);
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Checks that the JavaScript implementations of {@link SafeHtmlUtils#htmlEscape} and {@link
+ * UriUtils#encode} agree with the implementations they replaced. Their timings are compared by
+ * {@link GwtEscapingBenchmark}, which is not part of the suite.
+ */
+public class GwtEscapingTest extends GWTTestCase {
+
+  private static final String[] TEXTS = {
+    "",
+    "plain text",
+    "&",
+    "<",
+    ">",
+    "\"",
+    "'",
+    "&amp; is not an entity here",
+    GwtEscapingBenchmark.CELL,
+    GwtEscapingBenchmark.CELL + GwtEscapingBenchmark.CELL,
+  };
+
+  private static final String[] URIS = {
+    "",
+    "http://example.com/",
+    "http://example.com/a[0]",
+    "http://example.com/]]a[[",
+    "http://example.com/café %5B",
+    GwtEscapingBenchmark.URI,
+  };
+
+  public void testHtmlEscape() {
+    for (String text : TEXTS) {
+      assertEquals(LegacyJsEscaping.htmlEscape(text), SafeHtmlUtils.htmlEscape(text));
+    }
+  }
+
+  public void testEncode() {
+    for (String uri : URIS) {
+      assertEquals(LegacyJsEscaping.encode(uri), UriUtils.encode(uri));
+    }
+  }
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.safehtml.SafeHtmlTestsModule";
+  }
+}
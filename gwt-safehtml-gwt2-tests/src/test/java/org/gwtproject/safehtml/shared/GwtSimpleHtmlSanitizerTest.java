@@ -102,4 +102,26 @@ public class GwtSimpleHtmlSanitizerTest extends GWTTestCase {
     SafeHtml html = SimpleHtmlSanitizer.sanitizeHtml("<script>evil()</script>");
     assertEquals("&lt;script&gt;evil()&lt;/script&gt;", html.asString());
   }
+
+  public void testWhitelistedTags() {
+    // all whitelisted tags, as start and end tags, are left alone
+    String tags =
+        "<b></b><em></em><i></i><h1></h1><h2></h2><h3></h3><h4></h4><h5></h5><h6></h6>"
+            + "<ul></ul><ol></ol><li></li><br></br><hr></hr><strong></strong>";
+    assertEquals(tags, SimpleHtmlSanitizer.sanitizeHtml(tags).asString());
+  }
+
+  public void testAlmostWhitelistedTags() {
+    // tag names are matched exactly and case-sensitively
+    SafeHtml html = SimpleHtmlSanitizer.sanitizeHtml("<h7><h0><B><stron><strongs><b ></ b><//b>");
+    assertEquals(
+        "&lt;h7&gt;&lt;h0&gt;&lt;B&gt;&lt;stron&gt;&lt;strongs&gt;&lt;b &gt;&lt;/ b&gt;&lt;//b&gt;",
+        html.asString());
+  }
+
+  public void testEntitiesNextToTags() {
+    // entities directly before and after tags are not double-escaped
+    SafeHtml html = SimpleHtmlSanitizer.sanitizeHtml("&lt;<b>&#39;&x</b>&amp;<");
+    assertEquals("&lt;<b>&#39;&amp;x</b>&amp;&lt;", html.asString());
+  }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import elemental2.core.Global;
+import elemental2.core.JsRegExp;
+import elemental2.core.JsString;
+
+/**
+ * The JavaScript implementations of {@link SafeHtmlUtils#htmlEscape(String)} and {@link
+ * UriUtils#encode(String)} before they were rewritten, to compare the current ones against.
+ */
+final class LegacyJsEscaping {
+
+  private static final JsRegExp HTML_CHARS_RE = new JsRegExp(SafeHtmlUtils.HTML_CHARS);
+  private static final JsRegExp AMP_RE = new JsRegExp("&", "g");
+  private static final JsRegExp GT_RE = new JsRegExp(">", "g");
+  private static final JsRegExp LT_RE = new JsRegExp("<", "g");
+  private static final JsRegExp SQUOT_RE = new JsRegExp("\'", "g");
+  private static final JsRegExp QUOT_RE = new JsRegExp("\"", "g");
+
+  private LegacyJsEscaping() {}
+
+  /** The five-pass implementation SafeHtmlUtils.htmlEscape used to have. */
+  static String htmlEscape(String s) {
+    if (!HTML_CHARS_RE.test(s)) {
+      return s;
+    }
+    if (s.indexOf("&") != -1) {
+      s = new JsString(s).replace(AMP_RE, "&amp;");
+    }
+    if (s.indexOf("<") != -1) {
+      s = new JsString(s).replace(LT_RE, "&lt;");
+    }
+    if (s.indexOf(">") != -1) {
+      s = new JsString(s).replace(GT_RE, "&gt;");
+    }
+    if (s.indexOf("\"") != -1) {
+      s = new JsString(s).replace(QUOT_RE, "&quot;");
+    }
+    if (s.indexOf("'") != -1) {
+      s = new JsString(s).replace(SQUOT_RE, "&#39;");
+    }
+    return s;
+  }
+
+  /** The String.replaceAll based implementation UriUtils.encode used to have. */
+  static String encode(String uri) {
+    uri = Global.encodeURI(uri);
+    if (uri.indexOf("%5B") != -1) {
+      uri = uri.replaceAll("%5B", "[");
+    }
+    if (uri.indexOf("%5D") != -1) {
+      uri = uri.replaceAll("%5D", "]");
+    }
+    return uri;
+  }
+}
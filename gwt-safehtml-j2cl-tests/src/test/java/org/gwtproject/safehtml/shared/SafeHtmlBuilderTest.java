@@ -16,6 +16,7 @@
 package org.gwtproject.safehtml.shared;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.fail;
 
 import com.google.j2cl.junit.apt.J2clTestInput;
 import org.junit.Test;
@@ -32,6 +33,47 @@ public class SafeHtmlBuilderTest {
     assertEquals("", b.toSafeHtml().asString());
   }
 
+  @Test
+  public void testReset() {
+    SafeHtmlBuilder b = new SafeHtmlBuilder(64).appendEscaped("What's up so&so");
+    assertEquals("What&#39;s up so&amp;so", b.toSafeHtml().asString());
+    assertEquals("", b.reset().toSafeHtml().asString());
+    assertEquals("<br>", b.appendHtmlConstant("<br>").toSafeHtml().asString());
+  }
+
+  @Test
+  public void testAppendEscapedLines() {
+    assertEquals(
+        "a &lt;b&gt;<br>c&amp;d<br>e<br><br>f",
+        new SafeHtmlBuilder().appendEscapedLines("a <b>\nc&d\r\ne\r\n\rf").toSafeHtml().asString());
+  }
+
+  @Test
+  public void testChunked() {
+    SafeHtmlBuilder b = SafeHtmlBuilder.chunked(4).appendHtmlConstant("<p>");
+    for (int i = 0; i < 10; i++) {
+      b.appendEscaped("a<b&c").append(i);
+    }
+    String expected =
+        "<p>a&lt;b&amp;c0a&lt;b&amp;c1a&lt;b&amp;c2a&lt;b&amp;c3a&lt;b&amp;c4"
+            + "a&lt;b&amp;c5a&lt;b&amp;c6a&lt;b&amp;c7a&lt;b&amp;c8a&lt;b&amp;c9</p>";
+    assertEquals(expected, b.appendHtmlConstant("</p>").toSafeHtml().asString());
+    assertEquals(expected, b.build().asString());
+  }
+
+  @Test
+  public void testBuild() {
+    SafeHtmlBuilder b = new SafeHtmlBuilder().appendEscaped("What's up so&so");
+    assertEquals("What&#39;s up so&amp;so", b.build().asString());
+    try {
+      b.appendHtmlConstant("<br>");
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals("<br>", b.reset().appendHtmlConstant("<br>").build().asString());
+  }
+
   @Test
   public void testFromSafeHtml() {
     SafeHtml html = SafeHtmlUtils.fromSafeConstant(FOOBARBAZ_HTML);
@@ -51,6 +51,18 @@ public class SafeHtmlUtilsTest {
     assertEquals("f&quot;bar &#39;&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar", escaped);
   }
 
+  @Test
+  public void testEscapeText() {
+    String escaped = SafeHtmlUtils.htmlEscapeText("f\"bar \'<&em><e/m>oo&bar");
+    assertEquals("f\"bar \'&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar", escaped);
+  }
+
+  @Test
+  public void testEscapeDoubleQuotedAttribute() {
+    String escaped = SafeHtmlUtils.htmlEscapeDoubleQuotedAttribute("f\"bar \'<&em><e/m>oo&bar");
+    assertEquals("f&quot;bar \'<&amp;em><e/m>oo&amp;bar", escaped);
+  }
+
   @Test
   public void testEscape_withEntities1() {
     String escaped = SafeHtmlUtils.htmlEscapeAllowEntities("f\"bar \'<&em><e/m>oo&bar");
@@ -78,7 +90,16 @@ public class SafeHtmlUtilsTest {
   @Test
   public void testEscape_withEntitiesInvalidEntities() {
     String escaped = SafeHtmlUtils.htmlEscapeAllowEntities("&a mp;&;&x;&#;&#x;");
-    assertEquals("&amp;a mp;&amp;;&x;&amp;#;&amp;#x;", escaped);
+    assertEquals("&amp;a mp;&amp;;&amp;x;&amp;#;&amp;#x;", escaped);
+  }
+
+  @Test
+  public void testEscape_withHtml5Entities() {
+    String escaped = SafeHtmlUtils.htmlEscapeAllowEntities("&AElig;&frac12;&nbsp;&NotEqualTilde;");
+    assertEquals("&AElig;&frac12;&nbsp;&NotEqualTilde;", escaped);
+
+    escaped = SafeHtmlUtils.htmlEscapeAllowEntities("&bogus; &amp &AELIG; &frac12");
+    assertEquals("&amp;bogus; &amp;amp &amp;AELIG; &amp;frac12", escaped);
   }
 
   @Test
@@ -93,6 +114,16 @@ public class SafeHtmlUtilsTest {
     assertEquals(SafeHtmlUtils.htmlEscape(CONSTANT_HTML), h.asString());
   }
 
+  @Test
+  public void testFromString_length() {
+    for (String s : new String[] {"", "foobar", "&<>\"'", "O'Brien & <Sons> \"Ltd\" &&"}) {
+      // The length is counted before the text is escaped.
+      assertEquals(
+          SafeHtmlUtils.htmlEscape(s).length(),
+          SafeHtmlRope.lengthOf(SafeHtmlUtils.fromString(s)));
+    }
+  }
+
   @Test
   public void testEscape_chars() {
     String escaped = SafeHtmlUtils.htmlEscape('a');
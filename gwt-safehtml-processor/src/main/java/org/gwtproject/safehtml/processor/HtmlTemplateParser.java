@@ -107,6 +107,9 @@ final class HtmlTemplateParser {
   /** The template string being parsed. */
   private String template;
 
+  /** The literal parts of the template fed to the stream parser so far. */
+  private final StringBuilder parsedLiterals = new StringBuilder();
+
   /**
    * The index in the template up to which the template has been parsed.
    *
@@ -195,6 +198,7 @@ final class HtmlTemplateParser {
   private void parseAndAppendTemplateSegment(String segment) throws SafeHtmlProcessorException {
     try {
       streamHtmlParser.parse(segment);
+      parsedLiterals.append(segment);
     } catch (ParseException cause) {
       LOGGER.log(
           Level.SEVERE,
@@ -265,6 +269,14 @@ final class HtmlTemplateParser {
             "Template variable in unquoted attribute value: " + getTemplateParsedSoFar());
         throw new SafeHtmlProcessorException();
       }
+      // The stream parser only sees the literal parts of the template, so the quote opening the
+      // attribute value is just before the part of the value it has seen so far.
+      final char quote =
+          parsedLiterals.charAt(parsedLiterals.length() - streamHtmlParser.getValueIndex() - 1);
+      Preconditions.checkState(
+          quote == '"' || quote == '\'',
+          "A quoted attribute value should start with a quote character; at %s",
+          getTemplateParsedSoFar());
       if ("meta".equals(tag) && "content".equals(attribute)) {
         LOGGER.log(
             Level.SEVERE,
@@ -287,22 +299,22 @@ final class HtmlTemplateParser {
         // that the parameter comprises the entire attribute.
         if (lookAhead == lookBehind) {
           return new ParsedHtmlTemplate.HtmlContext(
-              ParsedHtmlTemplate.HtmlContext.Type.URL_ATTRIBUTE_ENTIRE, tag, attribute);
+              ParsedHtmlTemplate.HtmlContext.Type.URL_ATTRIBUTE_ENTIRE, tag, attribute, quote);
         } else {
           return new ParsedHtmlTemplate.HtmlContext(
-              ParsedHtmlTemplate.HtmlContext.Type.URL_ATTRIBUTE_START, tag, attribute);
+              ParsedHtmlTemplate.HtmlContext.Type.URL_ATTRIBUTE_START, tag, attribute, quote);
         }
       } else if (streamHtmlParser.inCss()) {
         if (streamHtmlParser.getValueIndex() == 0) {
           return new ParsedHtmlTemplate.HtmlContext(
-              ParsedHtmlTemplate.HtmlContext.Type.CSS_ATTRIBUTE_START, tag, attribute);
+              ParsedHtmlTemplate.HtmlContext.Type.CSS_ATTRIBUTE_START, tag, attribute, quote);
         } else {
           return new ParsedHtmlTemplate.HtmlContext(
-              ParsedHtmlTemplate.HtmlContext.Type.CSS_ATTRIBUTE, tag, attribute);
+              ParsedHtmlTemplate.HtmlContext.Type.CSS_ATTRIBUTE, tag, attribute, quote);
         }
       } else {
         return new ParsedHtmlTemplate.HtmlContext(
-            ParsedHtmlTemplate.HtmlContext.Type.ATTRIBUTE_VALUE, tag, attribute);
+            ParsedHtmlTemplate.HtmlContext.Type.ATTRIBUTE_VALUE, tag, attribute, quote);
       }
     } else if (streamHtmlParser.inCss()) {
       return new ParsedHtmlTemplate.HtmlContext(ParsedHtmlTemplate.HtmlContext.Type.CSS);
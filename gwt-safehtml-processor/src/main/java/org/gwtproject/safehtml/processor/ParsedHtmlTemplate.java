@@ -59,6 +59,7 @@ final class ParsedHtmlTemplate {
     private final Type type;
     private final String tag;
     private final String attribute;
+    private final char attributeQuote;
 
     /**
      * Creates a HTML context.
@@ -78,12 +79,27 @@ final class ParsedHtmlTemplate {
      *     otherwise
      */
     public HtmlContext(Type type, String tag, String attribute) {
+      this(type, tag, attribute, '\0');
+    }
+
+    /**
+     * Creates a HTML context.
+     *
+     * @param type the {@link Type} of this context
+     * @param tag the HTML tag this context corresponds to, if applicable; null otherwise
+     * @param attribute the HTML attribute this context corresponds to, if applicable; null
+     *     otherwise
+     * @param attributeQuote the quote character delimiting the attribute value this context
+     *     corresponds to, if applicable and known; {@code '\0'} otherwise
+     */
+    public HtmlContext(Type type, String tag, String attribute, char attributeQuote) {
       Preconditions.checkArgument(
           (type != Type.TEXT) || ((tag == null) && (attribute == null)),
           "tag and attribute must be null for context \"TEXT\"");
       this.type = type;
       this.tag = tag;
       this.attribute = attribute;
+      this.attributeQuote = attributeQuote;
     }
 
     /** Returns the attribute of this HTML context. */
@@ -91,6 +107,14 @@ final class ParsedHtmlTemplate {
       return attribute;
     }
 
+    /**
+     * Returns the quote character delimiting the attribute value of this HTML context, or {@code
+     * '\0'} if not applicable or not known.
+     */
+    public char getAttributeQuote() {
+      return attributeQuote;
+    }
+
     /** Returns the tag of this HTML context. */
     public String getTag() {
       return tag;
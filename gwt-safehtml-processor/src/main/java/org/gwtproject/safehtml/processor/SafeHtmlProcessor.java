@@ -384,10 +384,12 @@ public class SafeHtmlProcessor extends AbstractProcessor {
                 + "The template code generator cannot guarantee HTML-safety of "
                 + "the template -- please inspect manually",
             method);
-        emitTextContextParameterExpression(templateMethod, formalParameterName, parameterType);
+        emitTextContextParameterExpression(
+            templateMethod, contextType, formalParameterName, parameterType);
         break;
       case TEXT:
-        emitTextContextParameterExpression(templateMethod, formalParameterName, parameterType);
+        emitTextContextParameterExpression(
+            templateMethod, contextType, formalParameterName, parameterType);
         break;
 
       case CSS_ATTRIBUTE:
@@ -508,18 +510,25 @@ public class SafeHtmlProcessor extends AbstractProcessor {
    * <ul>
    *   <li>If the parameter is of a primitive (e.g., numeric, boolean) type, or of type {@link
    *       SafeHtml}, it is emitted as is, without escaping.
-   *   <li>Otherwise, an expression that passes the parameter's value through {@link
-   *       SafeHtmlUtils#htmlEscape(String)} is emitted. If the value is of type {@link SafeUri}, it
-   *       is converted to string using {@link SafeUri#asString()}.
+   *   <li>Otherwise, a statement that escapes the parameter's value straight into the builder is
+   *       emitted. If the value is of type {@link SafeUri}, it is converted to string using {@link
+   *       SafeUri#asString()}. In a {@link ParsedHtmlTemplate.HtmlContext.Type#TEXT TEXT} context
+   *       the value goes through {@link SafeHtmlUtils#htmlEscapeTextTo(CharSequence,
+   *       StringBuilder)}, which leaves quotes alone; in any other context it goes through {@link
+   *       SafeHtmlUtils#htmlEscapeTo(CharSequence, StringBuilder)}.
    * </ul>
    *
    * @param templateMethod method to be build
+   * @param contextType the type of HTML context in which the corresponding template variable occurs
    * @param formalParameterName the name of the template method's formal parameter corresponding to
    *     the expression being emitted
    * @param parameterType the Java type of the corresponding template method's
    */
   private void emitTextContextParameterExpression(
-      MethodSpec.Builder templateMethod, String formalParameterName, String parameterType) {
+      MethodSpec.Builder templateMethod,
+      ParsedHtmlTemplate.HtmlContext.Type contextType,
+      String formalParameterName,
+      String parameterType) {
     boolean parameterIsPrimitiveType = isPrimitive(parameterType);
     boolean parameterIsNotStringTyped = !(String.class.getCanonicalName().equals(parameterType));
 
@@ -539,8 +548,12 @@ public class SafeHtmlProcessor extends AbstractProcessor {
       if (parameterIsNotStringTyped) {
         expression = "String.valueOf(" + expression + ")";
       }
+      String escaper =
+          contextType == ParsedHtmlTemplate.HtmlContext.Type.TEXT
+              ? "htmlEscapeTextTo"
+              : "htmlEscapeTo";
       templateMethod.addStatement(
-          "sb.append($T.htmlEscape($L))", ClassName.get(SafeHtmlUtils.class), expression);
+          "$T.$L($L, sb)", ClassName.get(SafeHtmlUtils.class), escaper, expression);
     }
   }
 
@@ -561,8 +574,10 @@ public class SafeHtmlProcessor extends AbstractProcessor {
    *       attribute within the template, and the parameter isn't of type {@link SafeUri}, it is
    *       sanitized to ensure that it is safe in this context. This is done by passing the value
    *       through {@link UriUtils#sanitizeUri(String)}.
-   *   <li>The result is then HTML-escaped by passing it through {@link
-   *       SafeHtmlUtils#htmlEscape(String)}.
+   *   <li>The result is then HTML-escaped straight into the builder. In a double-quoted attribute
+   *       value only {@code &} and {@code "} need escaping, so it is passed through {@link
+   *       SafeHtmlUtils#htmlEscapeDoubleQuotedAttributeTo(CharSequence, StringBuilder)}; otherwise
+   *       it is passed through {@link SafeHtmlUtils#htmlEscapeTo(CharSequence, StringBuilder)}.
    * </ul>
    *
    * <i>Note</i>: Template method parameters of type {@link SafeHtml} are <i>not</i> treated
@@ -607,8 +622,12 @@ public class SafeHtmlProcessor extends AbstractProcessor {
 
     // TODO(xtof): Handle EscapedString subtype of SafeHtml, once it's been
     //     introduced.
+    String escaper =
+        htmlContext.getAttributeQuote() == '"'
+            ? "htmlEscapeDoubleQuotedAttributeTo"
+            : "htmlEscapeTo";
     templateMethod.addStatement(
-        "sb.append($T.htmlEscape($L))", ClassName.get(SafeHtmlUtils.class), expression);
+        "$T.$L($L, sb)", ClassName.get(SafeHtmlUtils.class), escaper, expression);
   }
 
   /**
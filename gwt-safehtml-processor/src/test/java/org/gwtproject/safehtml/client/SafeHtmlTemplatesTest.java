@@ -25,11 +25,12 @@ public class SafeHtmlTemplatesTest extends TestCase {
 
   private static final String HTML_MARKUP = "woo <i>whee</i>";
 
-  private static final String GOOD_URL_ESCAPED = "http://foo.com/foo&lt;bar&gt;&amp;baz=dootz";
+  // Only & and " need escaping in double-quoted attribute values.
+  private static final String GOOD_URL_ESCAPED = "http://foo.com/foo<bar>&amp;baz=dootz";
   private static final String GOOD_URL_ENCODED = "http://foo.com/foo%3Cbar%3E&amp;baz=dootz";
   private static final String GOOD_URL = "http://foo.com/foo<bar>&baz=dootz";
   private static final String BAD_URL = "javascript:evil(1<2)";
-  private static final String BAD_URL_ESCAPED = "javascript:evil(1&lt;2)";
+  private static final String BAD_URL_ESCAPED = "javascript:evil(1<2)";
 
   private SafeHtmlTestTemplates templates = new SafeHtmlTestTemplatesImpl();
 
@@ -41,6 +42,15 @@ public class SafeHtmlTemplatesTest extends TestCase {
             .asString());
   }
 
+  public void testSimpleTemplate_quotesInText() {
+    // Quotes have no special meaning in text content, and are left alone.
+    assertEquals(
+        "<span><b>\"it's\" &amp; &lt;b&gt;</b><span>woo <i>whee</i></span></span>",
+        templates
+            .simpleTemplate("\"it's\" & <b>", SafeHtmlUtils.fromSafeConstant(HTML_MARKUP))
+            .asString());
+  }
+
   public void testTemplateWithUriAttribute() {
     // as String: sanitized by the template
     assertEquals(
@@ -97,6 +107,14 @@ public class SafeHtmlTemplatesTest extends TestCase {
             .asString());
   }
 
+  public void testTemplateWithRegularAttribute_quotes() {
+    assertEquals(
+        "<div id=\"&quot;it's&quot;\">" + HTML_MARKUP + "</div>",
+        templates
+            .templateWithRegularAttribute("\"it's\"", SafeHtmlUtils.fromSafeConstant(HTML_MARKUP))
+            .asString());
+  }
+
   public void testTemplateWithSafeStyleAttributeComplete() {
     assertEquals(
         "<div style=\"width:10px;\">" + HTML_MARKUP + "</div>",
@@ -133,4 +151,11 @@ public class SafeHtmlTemplatesTest extends TestCase {
         "<span style='background: purple; color: green;'></span>",
         templates.templateWithStyleAttribute("background: purple").asString());
   }
+
+  public void testTemplateWithStyleAttribute_singleQuoted() {
+    // Single-quoted attribute values get all the HTML meta-characters escaped.
+    assertEquals(
+        "<span style='a&#39;b&quot;&lt;; color: green;'></span>",
+        templates.templateWithStyleAttribute("a'b\"<").asString());
+  }
 }
@@ -16,7 +16,7 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml simpleTemplate(String arg0, SafeHtml arg1) {
     StringBuilder sb = new StringBuilder();
     sb.append("<span><b>");
-    sb.append(SafeHtmlUtils.htmlEscape(arg0));
+    SafeHtmlUtils.htmlEscapeTextTo(arg0, sb);
     sb.append("</b><span>");
     sb.append(arg1.asString());
     sb.append("</span></span>");
@@ -28,7 +28,7 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithUriAttribute(String arg0, SafeHtml arg1) {
     StringBuilder sb = new StringBuilder();
     sb.append("<span><a href=\"");
-    sb.append(SafeHtmlUtils.htmlEscape(org.gwtproject.safehtml.shared.UriUtils.sanitizeUri(arg0)));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(org.gwtproject.safehtml.shared.UriUtils.sanitizeUri(arg0), sb);
     sb.append("\"><b>");
     sb.append(arg1.asString());
     sb.append("</b></a></span>");
@@ -40,7 +40,7 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithUriAttribute(SafeUri arg0, SafeHtml arg1) {
     StringBuilder sb = new StringBuilder();
     sb.append("<span><a href=\"");
-    sb.append(SafeHtmlUtils.htmlEscape(arg0.asString()));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(arg0.asString(), sb);
     sb.append("\"><b>");
     sb.append(arg1.asString());
     sb.append("</b></a></span>");
@@ -52,7 +52,7 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithRegularAttribute(String arg0, SafeHtml arg1) {
     StringBuilder sb = new StringBuilder();
     sb.append("<div id=\"");
-    sb.append(SafeHtmlUtils.htmlEscape(arg0));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(arg0, sb);
     sb.append("\">");
     sb.append(arg1.asString());
     sb.append("</div>");
@@ -64,7 +64,7 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithSafeStyleAttributeComplete(SafeStyles arg0, SafeHtml arg1) {
     StringBuilder sb = new StringBuilder();
     sb.append("<div style=\"");
-    sb.append(SafeHtmlUtils.htmlEscape(arg0.asString()));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(arg0.asString(), sb);
     sb.append("\">");
     sb.append(arg1.asString());
     sb.append("</div>");
@@ -76,9 +76,9 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithSafeStyleAttributeStart(SafeStyles arg0, int arg1, SafeHtml arg2) {
     StringBuilder sb = new StringBuilder();
     sb.append("<div style=\"");
-    sb.append(SafeHtmlUtils.htmlEscape(arg0.asString()));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(arg0.asString(), sb);
     sb.append("height:");
-    sb.append(SafeHtmlUtils.htmlEscape(String.valueOf(arg1)));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(String.valueOf(arg1), sb);
     sb.append("px;\">");
     sb.append(arg2.asString());
     sb.append("</div>");
@@ -90,9 +90,9 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithTwoPartUriAttribute(String arg0, String arg1) {
     StringBuilder sb = new StringBuilder();
     sb.append("<span><img src=\"");
-    sb.append(SafeHtmlUtils.htmlEscape(org.gwtproject.safehtml.shared.UriUtils.sanitizeUri(arg0)));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(org.gwtproject.safehtml.shared.UriUtils.sanitizeUri(arg0), sb);
     sb.append("/");
-    sb.append(SafeHtmlUtils.htmlEscape(arg1));
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo(arg1, sb);
     sb.append("\"/></span>");
     return new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml(sb.toString());
   }
@@ -102,7 +102,7 @@ public class TestTemplatesImpl implements TestTemplates {
   public SafeHtml templateWithStyleAttribute(String arg0) {
     StringBuilder sb = new StringBuilder();
     sb.append("<span style='");
-    sb.append(SafeHtmlUtils.htmlEscape(arg0));
+    SafeHtmlUtils.htmlEscapeTo(arg0, sb);
     sb.append("; color: green;'></span>");
     return new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml(sb.toString());
   }
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+
+/**
+ * A {@link SafeHtml} that is not necessarily backed by a single string, and whose HTML can be
+ * appended to a builder or an {@link Appendable} without being materialized as one first.
+ *
+ * <p>This interface is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package.
+ */
+interface AppendableSafeHtml extends SafeHtml {
+
+  /** Returns the length of the HTML, without materializing it. */
+  int length();
+
+  /** Appends the HTML to {@code sb}, without materializing it. */
+  void appendTo(StringBuilder sb);
+
+  /** Appends the HTML to {@code out}, without materializing it. */
+  void appendTo(Appendable out) throws IOException;
+}
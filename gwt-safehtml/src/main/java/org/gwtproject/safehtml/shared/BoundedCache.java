@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * A thread-safe map with a bounded number of entries, or a bounded total weight of entries,
+ * evicting the least recently used ones.
+ *
+ * <p>Entries are spread over segments by hash, each segment being an access-ordered {@link
+ * LinkedHashMap} guarded by its own lock, so that threads looking up different keys rarely contend.
+ * Each segment holds an equal share of the maximum weight, so an entry weighing more than a share
+ * is not kept, and does not evict anything. Values are computed outside of the locks; when two
+ * threads compute the value of the same key concurrently, both get the value that was stored first.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@GwtIncompatible
+final class BoundedCache<K, V> {
+
+  private static final int MAX_SEGMENTS = 16;
+
+  private final Segment<K, V>[] segments;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates an empty cache bounded by its number of entries.
+   *
+   * @param maximumSize the maximum number of entries, must be positive
+   */
+  BoundedCache(int maximumSize) {
+    this(maximumSize, (key, value) -> 1, "maximumSize");
+  }
+
+  /**
+   * Creates an empty cache bounded by the total weight of its entries.
+   *
+   * @param maximumWeight the maximum total weight of the entries, must be positive
+   * @param weigher computes the weight of an entry when it is added
+   */
+  BoundedCache(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+    this(maximumWeight, weigher, "maximumWeight");
+  }
+
+  private BoundedCache(
+      long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher, String parameter) {
+    if (maximumWeight <= 0) {
+      throw new IllegalArgumentException(parameter + " must be positive: " + maximumWeight);
+    }
+    // A power of two, so that the segment index is a mask of the hash.
+    int segmentCount = (int) Math.min(MAX_SEGMENTS, Long.highestOneBit(maximumWeight));
+    @SuppressWarnings("unchecked") // Arrays of a generic type can only be created through a cast.
+    Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      // Spread the remainder so that the segment capacities add up to maximumWeight.
+      long capacity = maximumWeight / segmentCount + (i < maximumWeight % segmentCount ? 1 : 0);
+      segments[i] = new Segment<>(capacity, weigher, evictions);
+    }
+    this.segments = segments;
+  }
+
+  /**
+   * Returns the value cached for {@code key}, computing it with {@code loader} and caching it if
+   * there is none.
+   */
+  V get(K key, Function<? super K, ? extends V> loader) {
+    Segment<K, V> segment = segmentFor(key);
+    V value;
+    synchronized (segment) {
+      value = segment.get(key);
+    }
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    misses.increment();
+    V computed = loader.apply(key);
+    synchronized (segment) {
+      value = segment.add(key, computed);
+    }
+    return value == null ? computed : value;
+  }
+
+  /** Removes all entries; the counters are left unchanged. */
+  void clear() {
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+        segment.weight = 0;
+      }
+    }
+  }
+
+  /** Returns the number of entries currently cached. */
+  int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /** Returns the total weight of the entries currently cached. */
+  long weight() {
+    long weight = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        weight += segment.weight;
+      }
+    }
+    return weight;
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  long evictionCount() {
+    return evictions.sum();
+  }
+
+  private Segment<K, V> segmentFor(K key) {
+    int h = key.hashCode();
+    // Mix the high bits in, so that keys differing only there still spread over segments.
+    h ^= h >>> 16;
+    return segments[h & (segments.length - 1)];
+  }
+
+  private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+    private final long capacity;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final LongAdder evictions;
+    long weight;
+
+    Segment(long capacity, ToIntBiFunction<? super K, ? super V> weigher, LongAdder evictions) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+      this.weigher = weigher;
+      this.evictions = evictions;
+    }
+
+    /**
+     * Adds an entry unless there is one for {@code key} already, in which case its value is
+     * returned, and evicts the least recently used entries while the segment is over capacity. An
+     * entry weighing more than the capacity is not added, rather than evicting all others first.
+     */
+    V add(K key, V value) {
+      V existing = get(key);
+      if (existing != null) {
+        return existing;
+      }
+      int entryWeight = weigher.applyAsInt(key, value);
+      if (entryWeight > capacity) {
+        return null;
+      }
+      put(key, value);
+      weight += entryWeight;
+      Iterator<Map.Entry<K, V>> eldest = entrySet().iterator();
+      while (weight > capacity) {
+        Map.Entry<K, V> entry = eldest.next();
+        weight -= weigher.applyAsInt(entry.getKey(), entry.getValue());
+        eldest.remove();
+        evictions.increment();
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * A bounded pool of equally sized {@link ByteBuffer}s, used by {@link Utf8SafeHtmlBuilder} to
+ * accumulate encoded HTML without allocating new buffers for each response.
+ *
+ * <p>Buffers are handed out by {@link #acquire()} and handed back by {@link #release(ByteBuffer)};
+ * when the pool is empty a new buffer is allocated, and when it is full released buffers are
+ * simply dropped. Direct buffers can be written to a channel without an intermediate copy, but are
+ * more expensive to allocate, so they are best used with a pool large enough to hold the buffers of
+ * all concurrent responses.
+ *
+ * <p>This class is thread-safe.
+ */
+@GwtIncompatible
+public final class ByteBufferPool {
+
+  private final ArrayBlockingQueue<ByteBuffer> idle;
+  private final int bufferSize;
+  private final boolean direct;
+
+  /**
+   * Creates an empty pool.
+   *
+   * @param maximumPooled the maximum number of idle buffers kept in the pool
+   * @param bufferSize the capacity of the buffers allocated by the pool
+   * @param direct whether to allocate direct buffers rather than heap buffers
+   * @throws IllegalArgumentException if {@code maximumPooled} is not positive, or {@code
+   *     bufferSize} is less than {@link Utf8HtmlEscaper#MAX_ESCAPE_LENGTH}
+   */
+  public ByteBufferPool(int maximumPooled, int bufferSize, boolean direct) {
+    if (maximumPooled <= 0) {
+      throw new IllegalArgumentException("maximumPooled must be positive: " + maximumPooled);
+    }
+    if (bufferSize < Utf8HtmlEscaper.MAX_ESCAPE_LENGTH) {
+      throw new IllegalArgumentException(
+          "bufferSize must be at least " + Utf8HtmlEscaper.MAX_ESCAPE_LENGTH + ": " + bufferSize);
+    }
+    this.idle = new ArrayBlockingQueue<>(maximumPooled);
+    this.bufferSize = bufferSize;
+    this.direct = direct;
+  }
+
+  /**
+   * Returns an empty buffer, taken from the pool if one is available.
+   *
+   * @return a cleared buffer of {@link #bufferSize()} bytes, that the caller owns until passing it
+   *     to {@link #release(ByteBuffer)}
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = idle.poll();
+    if (buffer == null) {
+      return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+    return buffer;
+  }
+
+  /**
+   * Hands a buffer back to the pool. The buffer is cleared, and must not be used by the caller
+   * anymore. Buffers that were not allocated by a pool of the same kind are dropped.
+   *
+   * @param buffer a buffer obtained from {@link #acquire()}
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer.capacity() != bufferSize || buffer.isDirect() != direct || buffer.isReadOnly()) {
+      return;
+    }
+    buffer.clear();
+    idle.offer(buffer);
+  }
+
+  /** Returns the capacity of the buffers allocated by this pool. */
+  public int bufferSize() {
+    return bufferSize;
+  }
+
+  /** Returns the number of idle buffers currently in the pool. */
+  public int size() {
+    return idle.size();
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * An opt-in cache for the results of an {@link HtmlSanitizer}, for applications that sanitize the
+ * same snippets over and over, such as signatures, boilerplate or bot messages.
+ *
+ * <p>Results are cached by the SHA-256 digest of their input rather than by the input itself, so
+ * that the cache does not hold on to long inputs, and repeated inputs get back the very same {@link
+ * SafeHtml} instance. The wrapped sanitizer must return equal results for equal inputs, as {@link
+ * SimpleHtmlSanitizer} and {@link HtmlSanitizerPolicy} do.
+ *
+ * <p>The cache is bounded by an estimate of the bytes its entries retain, counting two bytes per
+ * character of the results plus a fixed overhead per entry, and evicts the least recently used
+ * entries beyond that. Results too large to fit in a sixteenth of the bound are not kept.
+ * Instances are thread-safe, and lookups of different inputs rarely contend on the same lock.
+ *
+ * <p>Digesting an input takes a few nanoseconds per character, which is more than {@link
+ * SimpleHtmlSanitizer} takes to sanitize it, but a fraction of what a policy sanitizing URL
+ * attributes or a heavyweight third-party sanitizer takes. The hit and miss counts tell whether
+ * caching pays off for a given sanitizer and traffic. Each thread that calls {@link
+ * #sanitize(String)} keeps a digester, a {@link MessageDigest} and a buffer of a few kilobytes, for
+ * as long as the cache is reachable.
+ *
+ * <pre class="code">
+ * private static final CachingHtmlSanitizer SANITIZER =
+ *     new CachingHtmlSanitizer(
+ *         HtmlSanitizerPolicy.builder()
+ *             .allowTags("p", "b", "i", "br")
+ *             .allowUrlAttributes("a", "href")
+ *             .build(),
+ *         16 * 1024 * 1024);
+ *
+ * sb.append(SANITIZER.sanitize(comment.getBody()));</pre>
+ */
+@GwtIncompatible
+public final class CachingHtmlSanitizer implements HtmlSanitizer {
+
+  /** The estimated bytes retained by an entry besides the characters of its result. */
+  static final int ENTRY_OVERHEAD = 160;
+
+  /** The number of characters digested at a time. */
+  private static final int CHUNK_LENGTH = 1024;
+
+  private final HtmlSanitizer sanitizer;
+  private final BoundedCache<Key, SafeHtml> cache;
+
+  /** The digesters of the threads using this cache, dropped along with it. */
+  private final ThreadLocal<Digester> digesters = ThreadLocal.withInitial(Digester::new);
+
+  /**
+   * Creates an empty cache for the results of {@code sanitizer}.
+   *
+   * @param sanitizer the sanitizer whose results to cache
+   * @param maximumBytes the maximum estimated bytes retained by the cached results
+   * @throws IllegalArgumentException if {@code maximumBytes} is not positive
+   */
+  public CachingHtmlSanitizer(HtmlSanitizer sanitizer, long maximumBytes) {
+    if (sanitizer == null) {
+      throw new NullPointerException("sanitizer is null");
+    }
+    this.sanitizer = sanitizer;
+    this.cache =
+        new BoundedCache<>(
+            maximumBytes, (key, html) -> ENTRY_OVERHEAD + 2 * html.asString().length());
+  }
+
+  /**
+   * Returns the same value as the wrapped sanitizer.
+   *
+   * @param html the untrusted HTML
+   * @return the sanitized HTML, the same instance for repeated inputs while they are cached
+   */
+  @Override
+  public SafeHtml sanitize(String html) {
+    if (html == null) {
+      throw new NullPointerException("html is null");
+    }
+    return cache.get(digesters.get().key(html), key -> sanitizer.sanitize(html));
+  }
+
+  /** Removes all cached results; the counters are left unchanged. */
+  public void clear() {
+    cache.clear();
+  }
+
+  /** Returns the number of results currently cached. */
+  public int size() {
+    return cache.size();
+  }
+
+  /** Returns the estimated bytes retained by the results currently cached. */
+  public long bytes() {
+    return cache.weight();
+  }
+
+  /** Returns the number of lookups that found a cached result. */
+  public long hitCount() {
+    return cache.hitCount();
+  }
+
+  /** Returns the number of lookups that had to sanitize their input and cache the result. */
+  public long missCount() {
+    return cache.missCount();
+  }
+
+  /** Returns the fraction of lookups that found a cached result, or 0 if there were none. */
+  public double hitRate() {
+    long hits = cache.hitCount();
+    long lookups = hits + cache.missCount();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  /** Returns the number of results evicted to make room for new ones. */
+  public long evictionCount() {
+    return cache.evictionCount();
+  }
+
+  /** The SHA-256 digest of an input. */
+  private static final class Key {
+
+    private final byte[] digest;
+    private final int hashCode;
+
+    Key(byte[] digest) {
+      this.digest = digest;
+      // The digest is uniformly distributed, so any four of its bytes make a good hash code.
+      this.hashCode =
+          (digest[0] & 0xFF) << 24
+              | (digest[1] & 0xFF) << 16
+              | (digest[2] & 0xFF) << 8
+              | (digest[3] & 0xFF);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(digest, ((Key) obj).digest);
+    }
+  }
+
+  /** Digests strings with a reusable {@link MessageDigest} and buffer, one per thread and cache. */
+  private static final class Digester {
+
+    private final MessageDigest sha256;
+    private final byte[] bytes = new byte[2 * CHUNK_LENGTH];
+
+    Digester() {
+      try {
+        sha256 = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        // Every Java platform is required to support SHA-256.
+        throw new AssertionError(e);
+      }
+    }
+
+    /** Returns the key of {@code s}, digesting its UTF-16 code units without encoding it. */
+    Key key(String s) {
+      int length = s.length();
+      for (int start = 0; start < length; start += CHUNK_LENGTH) {
+        int end = Math.min(length, start + CHUNK_LENGTH);
+        int n = 0;
+        for (int i = start; i < end; i++) {
+          char c = s.charAt(i);
+          bytes[n++] = (byte) (c >>> 8);
+          bytes[n++] = (byte) c;
+        }
+        sha256.update(bytes, 0, n);
+      }
+      return new Key(sha256.digest());
+    }
+  }
+}
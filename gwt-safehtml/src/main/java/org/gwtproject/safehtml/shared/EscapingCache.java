@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+import org.gwtproject.safehtml.shared.annotations.IsSafeUri;
+import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeUriCastCheck;
+
+/**
+ * An opt-in cache for the results of HTML-escaping and URI sanitization, for applications that
+ * escape the same short values over and over, such as labels, enum names or user names.
+ *
+ * <p>Repeated values get back the very same {@link String}, {@link SafeHtml} or {@link SafeUri}
+ * instance rather than a fresh copy. Results are computed by {@link SafeHtmlUtils#fromString} and
+ * {@link UriUtils#fromString}, so they are always identical to the uncached ones.
+ *
+ * <p>The cache is bounded: it holds at most {@code maximumSize} escaped values and at most {@code
+ * maximumSize} sanitized URIs, evicting the least recently used ones, and only caches inputs of at
+ * most {@code maximumInputLength} characters. Longer inputs are processed without being cached or
+ * counted. Instances are thread-safe, lookups of different values rarely contend on the same lock.
+ *
+ * <pre class="code">
+ * private static final EscapingCache CACHE = new EscapingCache(10000, 64);
+ *
+ * sb.append(CACHE.fromString(user.getName()));</pre>
+ */
+@GwtIncompatible
+public final class EscapingCache {
+
+  private final int maximumInputLength;
+  private final BoundedCache<String, SafeHtml> html;
+  private final BoundedCache<String, SafeUri> uris;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maximumSize the maximum number of escaped values, and of sanitized URIs, to hold
+   * @param maximumInputLength the length of the longest input to cache
+   * @throws IllegalArgumentException if {@code maximumSize} is not positive, or {@code
+   *     maximumInputLength} is negative
+   */
+  public EscapingCache(int maximumSize, int maximumInputLength) {
+    if (maximumInputLength < 0) {
+      throw new IllegalArgumentException(
+          "maximumInputLength must not be negative: " + maximumInputLength);
+    }
+    this.maximumInputLength = maximumInputLength;
+    this.html = new BoundedCache<>(maximumSize);
+    this.uris = new BoundedCache<>(maximumSize);
+  }
+
+  /**
+   * Returns the same value as {@link SafeHtmlUtils#htmlEscape(String)}.
+   *
+   * @param s the string to be escaped
+   * @return the escaped string, the same instance for repeated values while they are cached
+   */
+  public String htmlEscape(String s) {
+    return fromString(s).asString();
+  }
+
+  /**
+   * Returns the same value as {@link SafeHtmlUtils#fromString(String)}.
+   *
+   * @param s the string to be escaped
+   * @return the escaped string as a {@link SafeHtml}, the same instance for repeated values while
+   *     they are cached
+   */
+  public SafeHtml fromString(String s) {
+    if (s.length() > maximumInputLength) {
+      return SafeHtmlUtils.fromString(s);
+    }
+    return html.get(s, SafeHtmlUtils::fromString);
+  }
+
+  /**
+   * Returns the same value as {@link UriUtils#sanitizeUri(String)}.
+   *
+   * @param uri the URI to be sanitized
+   * @return the sanitized URI, the same instance for repeated values while they are cached
+   */
+  @IsSafeUri
+  @SuppressIsSafeUriCastCheck
+  public String sanitizeUri(String uri) {
+    return fromUriString(uri).asString();
+  }
+
+  /**
+   * Returns the same value as {@link UriUtils#fromString(String)}.
+   *
+   * @param uri the URI to be sanitized
+   * @return the sanitized URI as a {@link SafeUri}, the same instance for repeated values while
+   *     they are cached
+   */
+  public SafeUri fromUriString(String uri) {
+    if (uri.length() > maximumInputLength) {
+      return UriUtils.fromString(uri);
+    }
+    return uris.get(uri, UriUtils::fromString);
+  }
+
+  /** Removes all cached values; the counters are left unchanged. */
+  public void clear() {
+    html.clear();
+    uris.clear();
+  }
+
+  /** Returns the number of values currently cached. */
+  public int size() {
+    return html.size() + uris.size();
+  }
+
+  /** Returns the number of lookups that found a cached value. */
+  public long hitCount() {
+    return html.hitCount() + uris.hitCount();
+  }
+
+  /** Returns the number of lookups that had to compute and cache a value. */
+  public long missCount() {
+    return html.missCount() + uris.missCount();
+  }
+
+  /** Returns the number of values evicted to make room for new ones. */
+  public long evictionCount() {
+    return html.evictionCount() + uris.evictionCount();
+  }
+}
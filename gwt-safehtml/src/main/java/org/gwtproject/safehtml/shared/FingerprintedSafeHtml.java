@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+/**
+ * A {@link SafeHtml} that keeps the hash of its HTML once computed, see {@link Fingerprints}.
+ *
+ * <p>This interface is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package.
+ */
+interface FingerprintedSafeHtml extends SafeHtml {
+
+  /** Returns the hash of the HTML, computing and keeping it on the first call. */
+  long contentHash();
+
+  /** Returns the hash of the HTML if it is known already, or {@code 0}. */
+  long knownContentHash();
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+/**
+ * Computes and combines the hashes behind {@link SafeHtmlUtils#fingerprint(SafeHtml)}.
+ *
+ * <p>The hash of HTML {@code c[0] ... c[n-1]} is the polynomial {@code
+ * sum((c[i] + 1) * M^(n-1-i))} modulo the Mersenne prime {@code P = 2^61 - 1}. It can be computed
+ * incrementally as text is appended, and the hash of a concatenation follows from the hashes and
+ * lengths of its parts, {@code hash(a + b) = hash(a) * M^length(b) + hash(b)}, so composite values
+ * never hash their content again. The modulus is a prime rather than 2<sup>64</sup>, under which
+ * polynomial hashes collide on well-known inputs such as Thue-Morse strings, whatever the
+ * multiplier. Adding one to each character keeps leading {@code '\0'}s from being ignored. The
+ * fingerprint is the hash run through a bijective mixing function, so that all of its bits depend
+ * on the whole content.
+ *
+ * <p>A hash of {@code 0} means that it has not been computed yet; the rare HTML whose hash really
+ * is {@code 0} just has it computed again each time.
+ *
+ * <p>This class is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package.
+ */
+final class Fingerprints {
+
+  /** The modulus, the Mersenne prime 2<sup>61</sup> - 1, which is also a mask of its bits. */
+  static final long P = (1L << 61) - 1;
+
+  /** The multiplier, 2<sup>61</sup> divided by the golden ratio; it has well mixed bits. */
+  private static final long M = 0x9E3779B97F4A7C15L >>> 3;
+
+  private static final long M2 = multiply(M, M);
+  private static final long M3 = multiply(M2, M);
+  private static final long M4 = multiply(M3, M);
+
+  // prevent instantiation
+  private Fingerprints() {}
+
+  /** Returns the hash of the HTML of {@code html}, computing it only if it is not known yet. */
+  static long contentHash(SafeHtml html) {
+    if (html instanceof FingerprintedSafeHtml) {
+      return ((FingerprintedSafeHtml) html).contentHash();
+    } else if (html instanceof OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) {
+      return ((OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) html).contentHash();
+    }
+    return hash(html.asString());
+  }
+
+  /** Returns the hash of the HTML of {@code html} if it is known already, or {@code 0}. */
+  static long knownContentHash(SafeHtml html) {
+    if (html instanceof FingerprintedSafeHtml) {
+      return ((FingerprintedSafeHtml) html).knownContentHash();
+    } else if (html instanceof OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) {
+      return ((OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) html).knownContentHash();
+    }
+    return 0;
+  }
+
+  /** Returns the hash of {@code s}. */
+  static long hash(CharSequence s) {
+    return hash(0, s, 0, s.length());
+  }
+
+  /** Returns the hash of the HTML hashed to {@code h} followed by {@code s[start, end)}. */
+  static long hash(long h, CharSequence s, int start, int end) {
+    int i = start;
+    // Four characters at a time, so that the multiplications don't wait for each other.
+    for (; i + 4 <= end; i += 4) {
+      // Each term is below P, so the sum does not overflow.
+      h =
+          reduce(
+              multiply(h, M4)
+                  + multiply(s.charAt(i) + 1L, M3)
+                  + multiply(s.charAt(i + 1) + 1L, M2)
+                  + multiply(s.charAt(i + 2) + 1L, M)
+                  + (s.charAt(i + 3) + 1L));
+    }
+    for (; i < end; i++) {
+      h = step(h, s.charAt(i));
+    }
+    return h;
+  }
+
+  /**
+   * Returns the hash of the HTML hashed to {@code h} followed by {@code s} once it has been
+   * HTML-escaped, without escaping it into a string.
+   */
+  static long hashEscaped(long h, CharSequence s) {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '&':
+        case '<':
+        case '>':
+        case '"':
+        case '\'':
+          String escape = SafeHtmlUtils.htmlEscape(c);
+          h = hash(h, escape, 0, escape.length());
+          break;
+        default:
+          h = step(h, c);
+      }
+    }
+    return h;
+  }
+
+  /** Returns the hash of the concatenation of HTML hashed to {@code left} and {@code right}. */
+  static long concat(long left, long right, int rightLength) {
+    return reduce(multiply(left, power(rightLength)) + right);
+  }
+
+  /** Returns the fingerprint of HTML hashed to {@code h}. */
+  static long fingerprint(long h) {
+    // The finalization step of MurmurHash3, which is a bijection.
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** Returns the hash of the HTML hashed to {@code h} followed by {@code c}. */
+  private static long step(long h, char c) {
+    return reduce(multiply(h, M) + (c + 1L));
+  }
+
+  /** Returns {@code M^n} modulo {@link #P}, by repeated squaring. */
+  private static long power(int n) {
+    long result = 1;
+    long square = M;
+    while (n != 0) {
+      if ((n & 1) != 0) {
+        result = multiply(result, square);
+      }
+      square = multiply(square, square);
+      n >>>= 1;
+    }
+    return result;
+  }
+
+  /**
+   * Returns {@code a * b} modulo {@link #P}, for {@code a} and {@code b} below {@code P}, without
+   * 128-bit arithmetic, which is not available in GWT and J2CL.
+   */
+  static long multiply(long a, long b) {
+    // Split into 30 high and 31 low bits: a * b = hi * 2^62 + mid * 2^31 + lo, and 2^61 = 1.
+    long a1 = a >>> 31;
+    long a0 = a & 0x7FFFFFFFL;
+    long b1 = b >>> 31;
+    long b0 = b & 0x7FFFFFFFL;
+    long mid = a1 * b0 + a0 * b1;
+    // mid * 2^31 = (mid >>> 30) * 2^61 + (mid & (2^30 - 1)) * 2^31.
+    long sum =
+        ((a1 * b1) << 1) + (mid >>> 30) + ((mid & 0x3FFFFFFFL) << 31) + reduce(a0 * b0);
+    return reduce(sum);
+  }
+
+  /** Returns {@code x} modulo {@link #P}, for a non-negative {@code x}. */
+  private static long reduce(long x) {
+    x = (x & P) + (x >>> 61);
+    return x >= P ? x - P : x;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * A {@link Writer} that HTML-escapes all characters written to it before passing them on to an
+ * underlying writer, in the same way as {@link SafeHtmlUtils#htmlEscape(String)}.
+ *
+ * <p>This allows large documents to be escaped incrementally, with memory bounded by the buffering
+ * of the underlying writer rather than by the size of the document. Every character is escaped
+ * independently of its neighbours, so text may be split across calls to the {@code write} methods
+ * at arbitrary positions, including between the two halves of a surrogate pair.
+ *
+ * <p>Runs of characters that need no escaping are passed on to the underlying writer in bulk.
+ *
+ * <p>This class is not thread-safe.
+ */
+@GwtIncompatible
+public final class HtmlEscapingWriter extends Writer {
+
+  private final Writer out;
+
+  /**
+   * Constructs a writer that escapes into {@code out}.
+   *
+   * @param out the writer receiving the escaped characters
+   */
+  public HtmlEscapingWriter(Writer out) {
+    super(out);
+    this.out = out;
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    String escape = SafeHtmlUtils.JvmImpl.escapeOf((char) c);
+    if (escape != null) {
+      out.write(escape);
+    } else {
+      out.write(c);
+    }
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || off + len > cbuf.length || off + len < 0) {
+      throw new IndexOutOfBoundsException(
+          "off " + off + ", len " + len + ", length " + cbuf.length);
+    }
+    int end = off + len;
+    int unescaped = off;
+    for (int i = off; i < end; i++) {
+      String escape = SafeHtmlUtils.JvmImpl.escapeOf(cbuf[i]);
+      if (escape != null) {
+        out.write(cbuf, unescaped, i - unescaped);
+        out.write(escape);
+        unescaped = i + 1;
+      }
+    }
+    out.write(cbuf, unescaped, end - unescaped);
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    SafeHtmlUtils.checkRange(str, off, off + len);
+    int end = off + len;
+    int unescaped = off;
+    for (int i = off; i < end; i++) {
+      String escape = SafeHtmlUtils.JvmImpl.escapeOf(str.charAt(i));
+      if (escape != null) {
+        out.write(str, unescaped, i - unescaped);
+        out.write(escape);
+        unescaped = i + 1;
+      }
+    }
+    out.write(str, unescaped, end - unescaped);
+  }
+
+  @Override
+  public Writer append(CharSequence csq) throws IOException {
+    if (csq == null) {
+      csq = "null";
+    }
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public Writer append(CharSequence csq, int start, int end) throws IOException {
+    if (csq == null) {
+      csq = "null";
+    }
+    // Writer#append would copy the range into a String first.
+    if (csq instanceof String) {
+      write((String) csq, start, end - start);
+    } else {
+      SafeHtmlUtils.htmlEscapeTo(csq, start, end, out);
+    }
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * An {@link HtmlSanitizer} that accepts the tags and attributes of a configurable whitelist.
+ *
+ * <p>Policies are created by a {@link Builder}, which declares the allowed tags, the attributes
+ * allowed on each of them, and the attributes whose values are URLs:
+ *
+ * <pre class="code">
+ * HtmlSanitizerPolicy policy = HtmlSanitizerPolicy.builder()
+ *     .allowTags("p", "b", "i", "ul", "ol", "li")
+ *     .allowAttributes("img", "alt", "title")
+ *     .allowUrlAttributes("a", "href")
+ *     .allowUrlAttributes("img", "src")
+ *     .build();</pre>
+ *
+ * <p>Sanitizing works like in {@link SimpleHtmlSanitizer}: start and end tags of allowed elements
+ * are kept, and any other markup is HTML-escaped, as are HTML metacharacters in text; entity
+ * references are kept. Tag and attribute names are matched case-insensitively and written in lower
+ * case. Attributes that are not allowed on a tag are dropped. The values of allowed attributes are
+ * decoded, passed through {@link UriUtils#sanitizeUri(String)} for URL attributes, and written
+ * HTML-escaped between double quotes. Tags longer than {@value #MAX_TAG_LENGTH} characters are
+ * escaped too, so that unclosed tags cannot make sanitizing quadratic.
+ *
+ * <p>{@link Builder#build()} compiles the policy once into lookup tables: tag and attribute names
+ * are matched in place against open-addressed tables of names, which number them, and whether an
+ * attribute is allowed on a tag is a single array access. A policy is immutable, so it can be
+ * shared by all threads without synchronization.
+ */
+public final class HtmlSanitizerPolicy implements HtmlSanitizer {
+
+  /**
+   * The length from which a tag is escaped as text, like a tag longer than {@code
+   * StreamSanitizer.MAX_TOKEN_LENGTH} when streaming.
+   */
+  static final int MAX_TAG_LENGTH = 8192;
+
+  /** The treatments of an attribute on a tag. */
+  private static final byte DROP = 0;
+
+  private static final byte KEEP = 1;
+  private static final byte SANITIZE_URL = 2;
+
+  private final NameTable tags;
+  private final NameTable attributes;
+
+  /** The treatment of each attribute on each tag, indexed by {@code tag * attributes.size()}. */
+  private final byte[] treatments;
+
+  private HtmlSanitizerPolicy(NameTable tags, NameTable attributes, byte[] treatments) {
+    this.tags = tags;
+    this.attributes = attributes;
+    this.treatments = treatments;
+  }
+
+  /**
+   * Returns a new builder for a policy that does not allow any tag yet.
+   *
+   * @return a new builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public SafeHtml sanitize(String html) {
+    if (html == null) {
+      throw new NullPointerException("html is null");
+    }
+    StringBuilder sanitized = new StringBuilder(html.length() + 16);
+    // No tag can end after the last '>', so anything from a '<' after it on is text.
+    int tagsEnd = html.lastIndexOf('>') + 1;
+    int textStart = 0;
+    for (int lt = html.indexOf('<'); lt != -1 && lt < tagsEnd; lt = html.indexOf('<', lt + 1)) {
+      SafeHtmlUtils.htmlEscapeAllowEntitiesTo(html, textStart, lt, sanitized);
+      int tagEnd = appendTag(html, lt, tagsEnd, sanitized);
+      if (tagEnd == -1) {
+        sanitized.append("&lt;");
+        textStart = lt + 1;
+      } else {
+        textStart = tagEnd;
+        lt = tagEnd - 1;
+      }
+    }
+    SafeHtmlUtils.htmlEscapeAllowEntitiesTo(html, textStart, html.length(), sanitized);
+    return new SafeHtmlString(sanitized.toString());
+  }
+
+  /**
+   * Sanitizes the HTML read from a stream according to this policy, appending the result to an
+   * {@link Appendable} as it goes.
+   *
+   * <p>The input is processed a window of a few thousand characters at a time, so sanitizing uses
+   * the same memory whatever the length of the input. The result is the same as that of {@link
+   * #sanitize(String)} on the whole input, and is safe to use in HTML contexts once all of it has
+   * been appended. The only exception are tags and entity references longer than 8192 characters,
+   * which are escaped. The reader is read until its end but not closed.
+   *
+   * @param html the input to sanitize
+   * @param out the target to append the sanitized HTML to
+   * @throws IOException if {@code html} or {@code out} throws one
+   */
+  @GwtIncompatible
+  public void sanitize(Reader html, Appendable out) throws IOException {
+    StreamSanitizer.sanitize(html, out, this::appendTag);
+  }
+
+  /**
+   * Appends the sanitized form of the allowed start or end tag starting with the {@code '<'} at
+   * {@code lt}, and returns the index after the tag. Returns -1 without appending anything if there
+   * is no allowed tag of at most {@link #MAX_TAG_LENGTH} characters before {@code end}.
+   */
+  private int appendTag(CharSequence html, int lt, int end, StringBuilder sb) {
+    // Bound the scan, as a tag that is not closed is scanned again from each '<' inside it.
+    int length = Math.min(end, lt + MAX_TAG_LENGTH);
+    int i = lt + 1;
+    boolean endTag = i < length && html.charAt(i) == '/';
+    if (endTag) {
+      i++;
+    }
+    int nameStart = i;
+    if (i == length || !isAsciiLetter(html.charAt(i))) {
+      return -1;
+    }
+    while (i < length && (isAsciiLetter(html.charAt(i)) || isAsciiDigit(html.charAt(i)))) {
+      i++;
+    }
+    int tag = tags.lookup(html, nameStart, i);
+    if (tag == -1) {
+      return -1;
+    }
+
+    int mark = sb.length();
+    sb.append(endTag ? "</" : "<").append(tags.name(tag));
+    while (true) {
+      i = skipWhitespace(html, i, length);
+      if (i == length) {
+        break;
+      }
+      char c = html.charAt(i);
+      if (c == '>') {
+        sb.append('>');
+        return i + 1;
+      } else if (c == '/') {
+        // Browsers ignore the slash of self-closing tags, and any other stray slash.
+        i++;
+        continue;
+      }
+
+      int attributeStart = i;
+      while (i < length && !isAttributeNameEnd(html.charAt(i))) {
+        i++;
+      }
+      if (i == attributeStart) {
+        // A quote, '<' or '=' where an attribute name is expected.
+        break;
+      }
+      int attributeEnd = i;
+      int valueStart = -1;
+      int valueEnd = -1;
+      i = skipWhitespace(html, i, length);
+      if (i < length && html.charAt(i) == '=') {
+        i = skipWhitespace(html, i + 1, length);
+        if (i == length) {
+          break;
+        }
+        char quote = html.charAt(i);
+        if (quote == '"' || quote == '\'') {
+          valueStart = i + 1;
+          valueEnd = valueStart;
+          while (valueEnd < length && html.charAt(valueEnd) != quote) {
+            valueEnd++;
+          }
+          if (valueEnd == length) {
+            break;
+          }
+          i = valueEnd + 1;
+        } else {
+          valueStart = i;
+          while (i < length && !isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+            i++;
+          }
+          valueEnd = i;
+        }
+      }
+      if (!endTag) {
+        appendAttribute(tag, html, attributeStart, attributeEnd, valueStart, valueEnd, sb);
+      }
+    }
+    // The tag is not complete, so it is escaped as text.
+    sb.setLength(mark);
+    return -1;
+  }
+
+  /**
+   * Appends the attribute named {@code html[nameStart, nameEnd)}, with the value {@code
+   * html[valueStart, valueEnd)}, if it is allowed on {@code tag}. {@code valueStart} is -1 for an
+   * attribute without a value.
+   */
+  private void appendAttribute(
+      int tag,
+      CharSequence html,
+      int nameStart,
+      int nameEnd,
+      int valueStart,
+      int valueEnd,
+      StringBuilder sb) {
+    int attribute = attributes.lookup(html, nameStart, nameEnd);
+    if (attribute == -1) {
+      return;
+    }
+    byte treatment = treatments[tag * attributes.size() + attribute];
+    if (treatment == DROP) {
+      return;
+    }
+    sb.append(' ').append(attributes.name(attribute));
+    if (valueStart == -1 && treatment == KEEP) {
+      return;
+    }
+    String value = valueStart == -1 ? "" : unescape(html, valueStart, valueEnd);
+    if (treatment == SANITIZE_URL) {
+      value = UriUtils.sanitizeUri(value);
+    }
+    sb.append("=\"");
+    SafeHtmlUtils.htmlEscapeTo(value, sb);
+    sb.append('"');
+  }
+
+  /** Returns {@code html[start, end)} with its character references decoded. */
+  private static String unescape(CharSequence html, int start, int end) {
+    String value = html.subSequence(start, end).toString();
+    if (value.indexOf('&') == -1) {
+      return value;
+    }
+    StringBuilder unescaped = new StringBuilder(value.length());
+    try {
+      SafeHtmlUtils.htmlUnescape(value, unescaped);
+    } catch (IOException e) {
+      // StringBuilder never throws IOException.
+      throw new AssertionError(e);
+    }
+    return unescaped.toString();
+  }
+
+  private static int skipWhitespace(CharSequence html, int i, int end) {
+    while (i < end && isWhitespace(html.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isAttributeNameEnd(char c) {
+    switch (c) {
+      case '/':
+      case '>':
+      case '=':
+      case '"':
+      case '\'':
+      case '<':
+        return true;
+      default:
+        return isWhitespace(c);
+    }
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isAsciiDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static char toLowerAscii(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  /**
+   * Declares the tags and attributes allowed by an {@link HtmlSanitizerPolicy}, and compiles them
+   * into one.
+   *
+   * <p>Elements whose content cannot be made safe by escaping, such as {@code script} or {@code
+   * style}, cannot be allowed, nor can attributes holding script or style, such as {@code onclick}
+   * or {@code style}. Attributes holding URLs, such as {@code href} or {@code src}, can only be
+   * allowed as URL attributes. Methods that would allow any of these throw an {@link
+   * IllegalArgumentException}.
+   */
+  public static final class Builder {
+
+    /** Elements whose content is not parsed as normal HTML, or that affect the whole page. */
+    private static final Set<String> UNSAFE_TAGS =
+        new HashSet<String>(
+            Arrays.asList(
+                "applet", "base", "embed", "frame", "frameset", "iframe", "link", "math", "meta",
+                "noembed", "noframes", "noscript", "object", "plaintext", "script", "style", "svg",
+                "template", "textarea", "title", "xmp"));
+
+    /** Attributes holding script, style or markup, besides the event handlers. */
+    private static final Set<String> UNSAFE_ATTRIBUTES =
+        new HashSet<String>(Arrays.asList("srcdoc", "srcset", "style"));
+
+    /** Attributes holding URLs. */
+    private static final Set<String> URL_ATTRIBUTES =
+        new HashSet<String>(
+            Arrays.asList(
+                "action", "background", "cite", "codebase", "data", "formaction", "href", "icon",
+                "longdesc", "manifest", "ping", "poster", "src", "usemap", "xlink:href"));
+
+    /** The allowed tags, each with the treatment of its allowed attributes. */
+    private final Map<String, Map<String, Byte>> tags =
+        new LinkedHashMap<String, Map<String, Byte>>();
+
+    private Builder() {}
+
+    /**
+     * Allows start and end tags with the given names, without attributes.
+     *
+     * @param tags the names of the tags to allow
+     * @return a reference to this object
+     * @throws IllegalArgumentException if a name is not a tag name, or names an element that
+     *     cannot be allowed safely
+     */
+    public Builder allowTags(String... tags) {
+      for (String tag : tags) {
+        tag(tag);
+      }
+      return this;
+    }
+
+    /**
+     * Allows attributes on a tag, allowing the tag itself if needed.
+     *
+     * @param tag the name of the tag
+     * @param attributes the names of the attributes to allow on {@code tag}
+     * @return a reference to this object
+     * @throws IllegalArgumentException if a name is not a tag or attribute name, if it names an
+     *     element or attribute that cannot be allowed safely, or if it names an attribute holding a
+     *     URL
+     */
+    public Builder allowAttributes(String tag, String... attributes) {
+      return allow(tag, attributes, KEEP);
+    }
+
+    /**
+     * Allows attributes holding URLs on a tag, allowing the tag itself if needed. Their values are
+     * passed through {@link UriUtils#sanitizeUri(String)}.
+     *
+     * @param tag the name of the tag
+     * @param attributes the names of the URL attributes to allow on {@code tag}
+     * @return a reference to this object
+     * @throws IllegalArgumentException if a name is not a tag or attribute name, or if it names an
+     *     element or attribute that cannot be allowed safely
+     */
+    public Builder allowUrlAttributes(String tag, String... attributes) {
+      return allow(tag, attributes, SANITIZE_URL);
+    }
+
+    /**
+     * Compiles the tags and attributes allowed so far into a policy. The builder can still be used
+     * afterwards, without affecting the policy.
+     *
+     * @return a new policy
+     */
+    public HtmlSanitizerPolicy build() {
+      List<String> tagNames = new ArrayList<String>(tags.keySet());
+      Set<String> attributeNames = new LinkedHashSet<String>();
+      for (Map<String, Byte> allowed : tags.values()) {
+        attributeNames.addAll(allowed.keySet());
+      }
+      NameTable tagTable = new NameTable(tagNames);
+      NameTable attributeTable = new NameTable(new ArrayList<String>(attributeNames));
+      byte[] treatments = new byte[tagTable.size() * attributeTable.size()];
+      for (int tag = 0; tag < tagTable.size(); tag++) {
+        for (Map.Entry<String, Byte> allowed : tags.get(tagTable.name(tag)).entrySet()) {
+          int attribute = attributeTable.lookup(allowed.getKey(), 0, allowed.getKey().length());
+          treatments[tag * attributeTable.size() + attribute] = allowed.getValue();
+        }
+      }
+      return new HtmlSanitizerPolicy(tagTable, attributeTable, treatments);
+    }
+
+    private Builder allow(String tag, String[] attributes, byte treatment) {
+      Map<String, Byte> allowed = tag(tag);
+      for (String attribute : attributes) {
+        String name = attributeName(attribute, treatment);
+        Byte previous = allowed.get(name);
+        if (previous == null || previous < treatment) {
+          // An attribute allowed both ways is treated as a URL.
+          allowed.put(name, treatment);
+        }
+      }
+      return this;
+    }
+
+    private Map<String, Byte> tag(String tag) {
+      String name = tag.toLowerCase(Locale.ROOT);
+      if (!isName(name, false)) {
+        throw new IllegalArgumentException("Not a tag name: " + tag);
+      }
+      if (UNSAFE_TAGS.contains(name)) {
+        throw new IllegalArgumentException("Tag cannot be allowed safely: " + tag);
+      }
+      Map<String, Byte> allowed = tags.get(name);
+      if (allowed == null) {
+        allowed = new LinkedHashMap<String, Byte>();
+        tags.put(name, allowed);
+      }
+      return allowed;
+    }
+
+    private static String attributeName(String attribute, byte treatment) {
+      String name = attribute.toLowerCase(Locale.ROOT);
+      if (!isName(name, true)) {
+        throw new IllegalArgumentException("Not an attribute name: " + attribute);
+      }
+      if (name.startsWith("on") || UNSAFE_ATTRIBUTES.contains(name)) {
+        throw new IllegalArgumentException("Attribute cannot be allowed safely: " + attribute);
+      }
+      if (treatment != SANITIZE_URL && URL_ATTRIBUTES.contains(name)) {
+        throw new IllegalArgumentException(
+            "URL attribute must be allowed by allowUrlAttributes: " + attribute);
+      }
+      return name;
+    }
+
+    /**
+     * Returns whether {@code name} is an ASCII letter followed by letters and digits, and also
+     * {@code '-'}, {@code '_'}, {@code '.'} and {@code ':'} for attribute names.
+     */
+    private static boolean isName(String name, boolean attribute) {
+      if (name.isEmpty() || !isAsciiLetter(name.charAt(0))) {
+        return false;
+      }
+      for (int i = 1; i < name.length(); i++) {
+        char c = name.charAt(i);
+        boolean punctuation = c == '-' || c == '_' || c == '.' || c == ':';
+        if (!isAsciiLetter(c) && !isAsciiDigit(c) && !(attribute && punctuation)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * An immutable set of lower case names, numbered from 0 in the order they were given, and looked
+   * up case-insensitively in an open-addressed hash table, without copying the name looked up.
+   */
+  private static final class NameTable {
+
+    private final String[] names;
+
+    /** The number of the name in each slot plus one, or 0 for an empty slot. */
+    private final int[] slots;
+
+    NameTable(List<String> names) {
+      this.names = names.toArray(new String[0]);
+      int capacity = 2;
+      while (capacity < 2 * this.names.length) {
+        capacity <<= 1;
+      }
+      slots = new int[capacity];
+      for (int id = 0; id < this.names.length; id++) {
+        int slot = hash(this.names[id], 0, this.names[id].length()) & (capacity - 1);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & (capacity - 1);
+        }
+        slots[slot] = id + 1;
+      }
+    }
+
+    int size() {
+      return names.length;
+    }
+
+    String name(int id) {
+      return names[id];
+    }
+
+    /** Returns the number of the name {@code s[start, end)}, ignoring case, or -1. */
+    int lookup(CharSequence s, int start, int end) {
+      int mask = slots.length - 1;
+      for (int slot = hash(s, start, end) & mask; ; slot = (slot + 1) & mask) {
+        int id = slots[slot] - 1;
+        if (id == -1) {
+          return -1;
+        }
+        if (matches(names[id], s, start, end)) {
+          return id;
+        }
+      }
+    }
+
+    private static boolean matches(String name, CharSequence s, int start, int end) {
+      if (name.length() != end - start) {
+        return false;
+      }
+      for (int i = 0; i < name.length(); i++) {
+        if (name.charAt(i) != toLowerAscii(s.charAt(start + i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+      int h = 0;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + toLowerAscii(s.charAt(i));
+      }
+      return h ^ (h >>> 16);
+    }
+  }
+}
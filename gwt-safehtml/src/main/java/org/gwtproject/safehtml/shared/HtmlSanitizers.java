@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * Utilities for sanitizing many inputs at once with an {@link HtmlSanitizer}, such as the stored
+ * comments of a moderation backfill.
+ *
+ * <p>The inputs are split into chunks of consecutive inputs, a few per worker thread and never
+ * fewer than {@value #MIN_CHUNK_SIZE} inputs each, so that short inputs do not pay for a task each.
+ * The sanitizer is thus called concurrently, in no particular order, and must be thread-safe, as
+ * {@link SimpleHtmlSanitizer}, {@link HtmlSanitizerPolicy} and {@link CachingHtmlSanitizer} are.
+ * The results are returned in the order of the inputs.
+ *
+ * <pre class="code">
+ * List&lt;SafeHtml&gt; bodies =
+ *     HtmlSanitizers.sanitizeAll(SimpleHtmlSanitizer.getInstance(), comments);</pre>
+ */
+@GwtIncompatible
+public final class HtmlSanitizers {
+
+  /** The smallest number of inputs sanitized by a single task. */
+  static final int MIN_CHUNK_SIZE = 64;
+
+  /** The number of chunks per worker thread, to balance inputs of unequal length. */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  // prevent instantiation
+  private HtmlSanitizers() {}
+
+  /**
+   * Sanitizes the inputs concurrently on the {@linkplain ForkJoinPool#commonPool() common pool}.
+   *
+   * @param sanitizer the thread-safe sanitizer to apply to each input
+   * @param inputs the inputs to sanitize
+   * @return the sanitized inputs, in the order of {@code inputs}, as an unmodifiable list
+   * @throws NullPointerException if any argument is {@code null}, or if {@code sanitizer} returns
+   *     {@code null}
+   * @throws RuntimeException if {@code sanitizer} throws
+   * @see #sanitizeAll(ForkJoinPool, HtmlSanitizer, List)
+   */
+  public static List<SafeHtml> sanitizeAll(HtmlSanitizer sanitizer, List<String> inputs) {
+    return sanitizeAll(ForkJoinPool.commonPool(), sanitizer, inputs);
+  }
+
+  /**
+   * Sanitizes the inputs of a stream concurrently on the {@linkplain ForkJoinPool#commonPool()
+   * common pool}. The stream is drained into a list first, so that it can be split into chunks of
+   * the same size however it was created.
+   *
+   * @param sanitizer the thread-safe sanitizer to apply to each input
+   * @param inputs the inputs to sanitize
+   * @return the sanitized inputs, in the encounter order of {@code inputs}, as an unmodifiable list
+   * @throws NullPointerException if any argument is {@code null}, or if {@code sanitizer} returns
+   *     {@code null}
+   * @throws RuntimeException if {@code sanitizer} throws
+   */
+  public static List<SafeHtml> sanitizeAll(
+      HtmlSanitizer sanitizer, Stream<? extends String> inputs) {
+    checkNotNull(sanitizer, "sanitizer");
+    List<String> drained = checkNotNull(inputs, "inputs").collect(Collectors.toList());
+    return sanitizeAll(ForkJoinPool.commonPool(), sanitizer, drained);
+  }
+
+  /**
+   * Sanitizes the inputs concurrently on {@code pool}, which splits the chunks among its worker
+   * threads by work stealing. Calling this method from a task of {@code pool} is fine.
+   *
+   * @param pool the pool to sanitize the inputs on
+   * @param sanitizer the thread-safe sanitizer to apply to each input
+   * @param inputs the inputs to sanitize
+   * @return the sanitized inputs, in the order of {@code inputs}, as an unmodifiable list
+   * @throws NullPointerException if any argument is {@code null}, or if {@code sanitizer} returns
+   *     {@code null}
+   * @throws RuntimeException if {@code sanitizer} throws
+   */
+  public static List<SafeHtml> sanitizeAll(
+      ForkJoinPool pool, HtmlSanitizer sanitizer, List<String> inputs) {
+    checkNotNull(pool, "pool");
+    checkNotNull(sanitizer, "sanitizer");
+    List<String> list = randomAccess(checkNotNull(inputs, "inputs"));
+    SafeHtml[] results = new SafeHtml[list.size()];
+    int chunkSize = chunkSize(list.size(), pool.getParallelism());
+    int chunkCount = (list.size() + chunkSize - 1) / chunkSize;
+    if (chunkCount > 1) {
+      pool.invoke(new SanitizeTask(sanitizer, list, results, chunkSize, 0, chunkCount));
+    } else {
+      sanitizeRange(sanitizer, list, results, 0, list.size());
+    }
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
+
+  /**
+   * Sanitizes the inputs concurrently on {@code executor}, with at most {@code parallelism}
+   * threads, counting the calling thread.
+   *
+   * <p>The calling thread sanitizes chunks too, and only waits for the chunks that other threads
+   * have started, so that the batch completes even if {@code executor} runs no task, rejects them
+   * or is busy with tasks waiting for this very batch.
+   *
+   * @param executor the executor to sanitize the inputs on
+   * @param parallelism the largest number of threads to sanitize the inputs with, at least 1
+   * @param sanitizer the thread-safe sanitizer to apply to each input
+   * @param inputs the inputs to sanitize
+   * @return the sanitized inputs, in the order of {@code inputs}, as an unmodifiable list
+   * @throws IllegalArgumentException if {@code parallelism} is less than 1
+   * @throws NullPointerException if any argument is {@code null}, or if {@code sanitizer} returns
+   *     {@code null}
+   * @throws RuntimeException if {@code sanitizer} throws
+   */
+  public static List<SafeHtml> sanitizeAll(
+      Executor executor, int parallelism, HtmlSanitizer sanitizer, List<String> inputs) {
+    checkNotNull(executor, "executor");
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism is less than 1: " + parallelism);
+    }
+    checkNotNull(sanitizer, "sanitizer");
+    List<String> list = randomAccess(checkNotNull(inputs, "inputs"));
+    SafeHtml[] results = new SafeHtml[list.size()];
+    int chunkSize = chunkSize(list.size(), parallelism);
+    int chunkCount = (list.size() + chunkSize - 1) / chunkSize;
+    Batch batch = new Batch(sanitizer, list, results, chunkSize, chunkCount);
+    for (int i = 1; i < Math.min(parallelism, chunkCount); i++) {
+      try {
+        executor.execute(batch);
+      } catch (RejectedExecutionException e) {
+        // Make do with the threads started so far.
+        break;
+      }
+    }
+    batch.run();
+    batch.await();
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
+
+  /** Returns the number of inputs per chunk, for a few chunks per thread. */
+  static int chunkSize(int size, int parallelism) {
+    int chunks = parallelism * CHUNKS_PER_THREAD;
+    return Math.max(MIN_CHUNK_SIZE, (size + chunks - 1) / chunks);
+  }
+
+  private static List<String> randomAccess(List<String> inputs) {
+    return inputs instanceof RandomAccess ? inputs : new ArrayList<>(inputs);
+  }
+
+  /** Sanitizes the inputs from {@code from} to {@code to}, into the same range of results. */
+  private static void sanitizeRange(
+      HtmlSanitizer sanitizer, List<String> inputs, SafeHtml[] results, int from, int to) {
+    for (int i = from; i < to; i++) {
+      results[i] = checkNotNull(sanitizer.sanitize(inputs.get(i)), "sanitized input");
+    }
+  }
+
+  private static <T> T checkNotNull(T value, String name) {
+    if (value == null) {
+      throw new NullPointerException(name + " is null");
+    }
+    return value;
+  }
+
+  /**
+   * Sanitizes the inputs of a range of chunks, splitting the range in halves until it is a single
+   * chunk. Chunk {@code i} sanitizes the inputs from {@code i * chunkSize}.
+   */
+  private static final class SanitizeTask extends RecursiveAction {
+
+    private final HtmlSanitizer sanitizer;
+    private final List<String> inputs;
+    private final SafeHtml[] results;
+    private final int chunkSize;
+    private final int fromChunk;
+    private final int toChunk;
+
+    SanitizeTask(
+        HtmlSanitizer sanitizer,
+        List<String> inputs,
+        SafeHtml[] results,
+        int chunkSize,
+        int fromChunk,
+        int toChunk) {
+      this.sanitizer = sanitizer;
+      this.inputs = inputs;
+      this.results = results;
+      this.chunkSize = chunkSize;
+      this.fromChunk = fromChunk;
+      this.toChunk = toChunk;
+    }
+
+    @Override
+    protected void compute() {
+      if (toChunk - fromChunk > 1) {
+        int middle = (fromChunk + toChunk) >>> 1;
+        invokeAll(
+            new SanitizeTask(sanitizer, inputs, results, chunkSize, fromChunk, middle),
+            new SanitizeTask(sanitizer, inputs, results, chunkSize, middle, toChunk));
+        return;
+      }
+      int from = fromChunk * chunkSize;
+      sanitizeRange(sanitizer, inputs, results, from, Math.min(inputs.size(), from + chunkSize));
+    }
+  }
+
+  /**
+   * The chunks of a batch run on an {@link Executor}. Each thread running the batch claims the
+   * next chunk until there are none left. Once a chunk fails, the remaining ones are claimed but
+   * skipped.
+   */
+  private static final class Batch implements Runnable {
+
+    private final HtmlSanitizer sanitizer;
+    private final List<String> inputs;
+    private final SafeHtml[] results;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private final CountDownLatch pendingChunks;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Batch(
+        HtmlSanitizer sanitizer,
+        List<String> inputs,
+        SafeHtml[] results,
+        int chunkSize,
+        int chunkCount) {
+      this.sanitizer = sanitizer;
+      this.inputs = inputs;
+      this.results = results;
+      this.chunkSize = chunkSize;
+      this.chunkCount = chunkCount;
+      this.pendingChunks = new CountDownLatch(chunkCount);
+    }
+
+    @Override
+    public void run() {
+      for (int chunk; (chunk = nextChunk.getAndIncrement()) < chunkCount; ) {
+        try {
+          if (failure.get() == null) {
+            int from = chunk * chunkSize;
+            sanitizeRange(
+                sanitizer, inputs, results, from, Math.min(inputs.size(), from + chunkSize));
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        } finally {
+          pendingChunks.countDown();
+        }
+      }
+    }
+
+    /**
+     * Waits for the chunks claimed by other threads, and rethrows the first failure. Only called
+     * once the calling thread found no chunk left to claim, so the wait is bounded by the chunks in
+     * progress.
+     */
+    void await() {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          pendingChunks.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      Throwable t = failure.get();
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      } else if (t != null) {
+        throw new RuntimeException(t);
+      }
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package org.gwtproject.safehtml.shared;
 
+import java.nio.charset.StandardCharsets;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
 import org.gwtproject.safehtml.shared.annotations.IsSafeHtml;
 import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
 
@@ -29,6 +31,12 @@ public class OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml implements SafeH
 
   private String html;
 
+  /** The UTF-8 encoding of the HTML, once computed by {@link #utf8()}. */
+  @GwtIncompatible private transient volatile byte[] utf8;
+
+  /** The hash of the HTML, see {@link Fingerprints}, or {@code 0} until computed. */
+  private transient volatile long contentHash;
+
   public OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml() {}
 
   /**
@@ -64,4 +72,36 @@ public class OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml implements SafeH
     }
     return html.equals(((SafeHtml) obj).asString());
   }
+
+  /** Returns the hash of the HTML, computing it on the first call. */
+  long contentHash() {
+    long hash = contentHash;
+    if (hash == 0) {
+      hash = Fingerprints.hash(html);
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  /** Returns the hash of the HTML if {@link #contentHash()} has computed it, or {@code 0}. */
+  long knownContentHash() {
+    return contentHash;
+  }
+
+  /** Returns the UTF-8 encoding of the HTML, computing it on the first call. */
+  @GwtIncompatible
+  byte[] utf8() {
+    byte[] bytes = utf8;
+    if (bytes == null) {
+      bytes = html.getBytes(StandardCharsets.UTF_8);
+      utf8 = bytes;
+    }
+    return bytes;
+  }
+
+  /** Returns the UTF-8 encoding of the HTML if {@link #utf8()} has computed it, or {@code null}. */
+  @GwtIncompatible
+  byte[] cachedUtf8() {
+    return utf8;
+  }
 }
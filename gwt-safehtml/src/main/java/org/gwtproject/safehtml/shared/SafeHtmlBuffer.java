@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+import org.gwtproject.safehtml.shared.annotations.IsSafeHtml;
+import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
+
+/**
+ * The buffer of a {@link SafeHtmlBuilder}, handed over by {@link SafeHtmlBuilder#build()} and
+ * wrapped as an object of type {@link SafeHtml}.
+ *
+ * <p>The buffer is only copied into a string the first time {@link #asString()} is called, and is
+ * dropped afterwards. Appending this HTML to a builder or an {@link Appendable} copies straight
+ * from the buffer, so HTML that is only written out is never copied into a string at all.
+ *
+ * <p>This class is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package. It is serialized as a {@link SafeHtmlString}.
+ *
+ * <p>All implementors must implement .equals and .hashCode so that they operate just like
+ * String.equals() and String.hashCode().
+ */
+@GwtIncompatible
+final class SafeHtmlBuffer implements AppendableSafeHtml, FingerprintedSafeHtml {
+
+  /** The number of characters copied at a time to an {@link Appendable}. */
+  private static final int CHUNK_LENGTH = 8192;
+
+  /*
+   * Exactly one of buffer and html is non-null. They are volatile so that threads racing to
+   * materialize the same value never see both as null: html is always written before buffer is
+   * cleared.
+   */
+  private volatile StringBuilder buffer;
+  private volatile String html;
+  private final int length;
+
+  /** The hash of the HTML, see {@link Fingerprints}, or {@code 0} until computed. */
+  private transient volatile long contentHash;
+
+  /**
+   * Constructs a {@link SafeHtmlBuffer} from a buffer, without copying it. Callers are responsible
+   * for ensuring that the buffer satisfies the constraints of the contract imposed by the {@link
+   * SafeHtml} interface.
+   *
+   * @param buffer the buffer to be wrapped as a {@link SafeHtml}; it must not be modified
+   *     afterwards
+   * @param contentHash the hash of the buffer, see {@link Fingerprints}, or {@code 0} if unknown
+   */
+  SafeHtmlBuffer(StringBuilder buffer, long contentHash) {
+    this.buffer = buffer;
+    this.length = buffer.length();
+    this.contentHash = contentHash;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  /** Returns a hash code for this string. */
+  @Override
+  public int hashCode() {
+    return asString().hashCode();
+  }
+
+  /** Compares this string to the specified object. */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SafeHtml)) {
+      return false;
+    }
+    return asString().equals(((SafeHtml) obj).asString());
+  }
+
+  @Override
+  public String toString() {
+    return "safe: \"" + asString() + "\"";
+  }
+
+  /** {@inheritDoc} */
+  @IsSafeHtml
+  @SuppressIsSafeHtmlCastCheck
+  public String asString() {
+    String materialized = html;
+    if (materialized == null) {
+      StringBuilder toMaterialize = buffer;
+      if (toMaterialize == null) {
+        // Another thread materialized the string in the meantime.
+        return html;
+      }
+      materialized = toMaterialize.toString();
+      html = materialized;
+      buffer = null;
+    }
+    return materialized;
+  }
+
+  /** Returns the hash of the HTML, computing it on the first call without materializing it. */
+  @Override
+  public long contentHash() {
+    long hash = contentHash;
+    if (hash == 0) {
+      StringBuilder toHash = buffer;
+      hash = toHash != null ? Fingerprints.hash(toHash) : Fingerprints.hash(html);
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public long knownContentHash() {
+    return contentHash;
+  }
+
+  /** Appends the HTML to {@code sb}, without materializing it. */
+  @Override
+  public void appendTo(StringBuilder sb) {
+    StringBuilder toAppend = buffer;
+    if (toAppend == null) {
+      sb.append(html);
+    } else {
+      sb.append(toAppend);
+    }
+  }
+
+  /** Appends the HTML to {@code out}, without materializing it. */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    if (out instanceof StringBuilder) {
+      appendTo((StringBuilder) out);
+      return;
+    }
+    StringBuilder toAppend = buffer;
+    if (toAppend == null) {
+      out.append(html);
+      return;
+    }
+    // Appendables such as writers may copy the sequence they are passed, so hand them bounded
+    // chunks rather than the whole buffer.
+    for (int start = 0; start < length; start += CHUNK_LENGTH) {
+      out.append(toAppend, start, Math.min(length, start + CHUNK_LENGTH));
+    }
+  }
+
+  private Object writeReplace() {
+    return new SafeHtmlString(asString());
+  }
+}
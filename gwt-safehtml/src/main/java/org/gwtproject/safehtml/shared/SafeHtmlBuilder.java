@@ -15,6 +15,10 @@
  */
 package org.gwtproject.safehtml.shared;
 
+import java.util.ArrayList;
+import java.util.List;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
 /**
  * A builder that facilitates the building up of XSS-safe HTML from text snippets. It is used
  * essentially like a {@link StringBuilder}; unlike a {@link StringBuilder}, it automatically
@@ -29,16 +33,128 @@ package org.gwtproject.safehtml.shared;
  * #appendHtmlConstant(String)} for details.
  *
  * <p>The accumulated XSS-safe HTML can be obtained in the form of a {@link SafeHtml} via the {@link
- * #toSafeHtml()} method.
+ * #toSafeHtml()} method, which copies it and leaves the builder usable, or via the {@link #build()}
+ * method, which hands it over without a copy and leaves the builder consumed.
+ *
+ * <p>For very large documents, a builder created by {@link #chunked(int)} stores the HTML as a list
+ * of chunks of about the same size rather than in a single buffer, see there for details. A
+ * builder can also hash the HTML as it is appended, see {@link #trackFingerprint()}.
  *
  * <p>This class is not thread-safe.
  */
 public final class SafeHtmlBuilder {
 
-  private final StringBuilder sb = new StringBuilder();
+  private static final JvmImpl impl = new JvmImpl();
+
+  /** The number of characters escaped at a time into a chunk, in chunked mode. */
+  private static final int MAX_SLICE_LENGTH = 1024;
+
+  /**
+   * The accumulated HTML, or {@code null} once it has been handed over by {@link #build()}. In
+   * chunked mode, only the HTML accumulated since the last chunk was sealed.
+   */
+  private StringBuilder sb;
+
+  /** The sealed chunks in chunked mode, or {@code null}. */
+  private final List<SafeHtml> chunks;
+
+  /** The size of the chunks in chunked mode, or {@code 0}. */
+  private final int chunkSize;
+
+  /** Whether the HTML is hashed as it is appended, see {@link #trackFingerprint()}. */
+  private boolean hashing;
+
+  /**
+   * The hash of the sealed chunks followed by the first {@link #hashedLength} characters of {@link
+   * #sb}, see {@link Fingerprints}, or {@code 0} if the builder is not {@link #hashing}.
+   */
+  private long contentHash;
+
+  private int hashedLength;
 
   /** Constructs an empty SafeHtmlBuilder. */
-  public SafeHtmlBuilder() {}
+  public SafeHtmlBuilder() {
+    sb = new StringBuilder();
+    chunks = null;
+    chunkSize = 0;
+  }
+
+  /**
+   * Constructs an empty SafeHtmlBuilder with room for {@code capacity} characters, so that
+   * building HTML of about that size does not need to grow the buffer.
+   *
+   * @param capacity the initial capacity
+   * @throws NegativeArraySizeException if {@code capacity} is negative
+   */
+  public SafeHtmlBuilder(int capacity) {
+    sb = new StringBuilder(capacity);
+    chunks = null;
+    chunkSize = 0;
+  }
+
+  private SafeHtmlBuilder(List<SafeHtml> chunks, int chunkSize) {
+    this.sb = new StringBuilder(chunkSize);
+    this.chunks = chunks;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Constructs an empty SafeHtmlBuilder that stores the HTML as a list of chunks, for building
+   * documents of several megabytes.
+   *
+   * <p>Once a chunk reaches {@code chunkSize} characters it is sealed and a new one is started, so
+   * the builder never copies the HTML accumulated so far to grow its buffer, and never allocates a
+   * single huge buffer, which some garbage collectors handle poorly. Long text appended by {@link
+   * #appendEscaped(CharSequence, int, int)} and the other escaping methods is split across chunks;
+   * other appends are kept whole, so a chunk can exceed {@code chunkSize} by the length of one
+   * append.
+   *
+   * <p>{@link #toSafeHtml()} and {@link #build()} return the chunks without joining them: {@link
+   * SafeHtmlUtils#appendTo(SafeHtml, Appendable)} streams them to a writer one by one, and only
+   * {@link SafeHtml#asString()} joins them into a single string.
+   *
+   * @param chunkSize the number of characters at which a chunk is sealed
+   * @return a new chunked builder
+   * @throws IllegalArgumentException if {@code chunkSize} is not positive
+   */
+  public static SafeHtmlBuilder chunked(int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+    }
+    return new SafeHtmlBuilder(new ArrayList<>(), chunkSize);
+  }
+
+  /**
+   * Makes the builder hash the HTML as it is appended, so that the values it builds know their
+   * {@link SafeHtmlUtils#fingerprint(SafeHtml) fingerprint} already, for instance to send it as an
+   * entity tag without going over the HTML again. Appended values whose fingerprint is known are
+   * not hashed again.
+   *
+   * <p>Hashing makes appending text about twice as slow, so builders only do it when asked; the
+   * fingerprint of other values is computed on demand. Hashing stays on until the builder is
+   * {@link #reset() reset}, so that builders handed back to a {@link SafeHtmlBuilderPool} don't
+   * slow down the next caller.
+   *
+   * @return a reference to this object
+   * @throws IllegalStateException if {@link #build()} has been called since the builder was
+   *     created or last {@link #reset() reset}
+   */
+  public SafeHtmlBuilder trackFingerprint() {
+    buffer();
+    if (!hashing) {
+      hashing = true;
+      // Catch up on the HTML appended so far.
+      if (chunks != null) {
+        for (SafeHtml chunk : chunks) {
+          contentHash =
+              Fingerprints.concat(
+                  contentHash, Fingerprints.contentHash(chunk), SafeHtmlRope.lengthOf(chunk));
+        }
+      }
+      hashAppended();
+    }
+    return this;
+  }
 
   /*
    * Boolean and numeric types converted to String are always HTML safe -- no
@@ -52,8 +168,8 @@ public final class SafeHtmlBuilder {
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(boolean b) {
-    sb.append(b);
-    return this;
+    buffer().append(b);
+    return hashAppended();
   }
 
   /**
@@ -63,8 +179,8 @@ public final class SafeHtmlBuilder {
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(byte num) {
-    sb.append(num);
-    return this;
+    buffer().append(num);
+    return hashAppended();
   }
 
   /**
@@ -75,8 +191,8 @@ public final class SafeHtmlBuilder {
    * @see SafeHtmlUtils#htmlEscape(char)
    */
   public SafeHtmlBuilder append(char c) {
-    sb.append(SafeHtmlUtils.htmlEscape(c));
-    return this;
+    buffer().append(SafeHtmlUtils.htmlEscape(c));
+    return hashAppended();
   }
 
   /**
@@ -86,8 +202,8 @@ public final class SafeHtmlBuilder {
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(double num) {
-    sb.append(num);
-    return this;
+    buffer().append(num);
+    return hashAppended();
   }
 
   /**
@@ -97,8 +213,8 @@ public final class SafeHtmlBuilder {
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(float num) {
-    sb.append(num);
-    return this;
+    buffer().append(num);
+    return hashAppended();
   }
 
   /**
@@ -108,8 +224,8 @@ public final class SafeHtmlBuilder {
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(int num) {
-    sb.append(num);
-    return this;
+    buffer().append(num);
+    return hashAppended();
   }
 
   /**
@@ -119,18 +235,38 @@ public final class SafeHtmlBuilder {
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(long num) {
-    sb.append(num);
-    return this;
+    buffer().append(num);
+    return hashAppended();
   }
 
   /**
    * Appends the contents of another {@link SafeHtml} object, without applying HTML-escaping to it.
    *
+   * <p>Values built by {@link SafeHtmlUtils#concat(SafeHtml...)} are copied fragment by fragment,
+   * without being flattened into a string first, and values built by {@link
+   * SafeHtmlUtils#fromString(String)} are escaped straight into the builder.
+   *
    * @param html the {@link SafeHtml} to append
    * @return a reference to this object
    */
   public SafeHtmlBuilder append(SafeHtml html) {
-    sb.append(html.asString());
+    StringBuilder buffer = buffer();
+    long knownHash = hashing ? Fingerprints.knownContentHash(html) : 0;
+    if (knownHash != 0) {
+      hashAppended();
+    }
+    int start = buffer.length();
+    if (html instanceof AppendableSafeHtml) {
+      ((AppendableSafeHtml) html).appendTo(buffer);
+    } else {
+      buffer.append(html.asString());
+    }
+    if (knownHash == 0) {
+      return hashAppended();
+    }
+    // Combine the hashes instead of hashing the appended HTML again.
+    hashedLength = buffer.length();
+    contentHash = Fingerprints.concat(contentHash, knownHash, hashedLength - start);
     return this;
   }
 
@@ -142,21 +278,63 @@ public final class SafeHtmlBuilder {
    * @see SafeHtmlUtils#htmlEscape(String)
    */
   public SafeHtmlBuilder appendEscaped(String text) {
-    sb.append(SafeHtmlUtils.htmlEscape(text));
-    return this;
+    if (chunks != null && text.length() > MAX_SLICE_LENGTH) {
+      return appendEscaped(text, 0, text.length());
+    }
+    SafeHtmlUtils.htmlEscapeTo(text, buffer());
+    return hashAppended();
   }
 
   /**
-   * Appends a string consisting of several newline-separated lines after HTML-escaping it. Newlines
-   * in the original string are converted to {@code <br>} tags.
+   * Appends a range of a character sequence after HTML-escaping it, without copying the range
+   * first.
+   *
+   * @param text the character sequence containing the range to append
+   * @param start the index of the first character to append
+   * @param end the index after the last character to append
+   * @return a reference to this object
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code text.length()}
+   * @see SafeHtmlUtils#htmlEscape(CharSequence, int, int)
+   */
+  public SafeHtmlBuilder appendEscaped(CharSequence text, int start, int end) {
+    if (chunks != null) {
+      SafeHtmlUtils.checkRange(text, start, end);
+      // Escape long text a slice at a time, so that it is split across chunks.
+      while (end - start > MAX_SLICE_LENGTH) {
+        int sliceEnd = start + MAX_SLICE_LENGTH;
+        SafeHtmlUtils.htmlEscapeTo(text, start, sliceEnd, buffer());
+        start = sliceEnd;
+      }
+    }
+    SafeHtmlUtils.htmlEscapeTo(text, start, end, buffer());
+    return hashAppended();
+  }
+
+  /**
+   * Appends a string consisting of several newline-separated lines after HTML-escaping it. Line
+   * terminators in the original string ({@code \n}, {@code \r\n} or {@code \r}) are converted to
+   * {@code <br>} tags.
    *
    * @param text the string to append
    * @return a reference to this object
    * @see SafeHtmlUtils#htmlEscape(String)
    */
   public SafeHtmlBuilder appendEscapedLines(String text) {
-    sb.append(SafeHtmlUtils.htmlEscape(text).replaceAll("\n", "<br>"));
-    return this;
+    int length = text.length();
+    int lineStart = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r') {
+        appendEscaped(text, lineStart, i);
+        buffer().append("<br>");
+        if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+          i++;
+        }
+        lineStart = i + 1;
+      }
+    }
+    return appendEscaped(text, lineStart, length);
   }
 
   /**
@@ -192,16 +370,146 @@ public final class SafeHtmlBuilder {
    */
   public SafeHtmlBuilder appendHtmlConstant(String html) {
     SafeHtmlHostedModeUtils.maybeCheckCompleteHtml(html);
-    sb.append(html);
+    buffer().append(html);
+    return hashAppended();
+  }
+
+  /**
+   * Discards the HTML accumulated in the builder, so that it can be reused. The buffer is kept, so
+   * building HTML of a similar size again does not need to grow it, unless it has been handed over
+   * by {@link #build()}, in which case the builder starts over with a new buffer. Hashing is turned
+   * off again, see {@link #trackFingerprint()}.
+   *
+   * @return a reference to this object
+   */
+  public SafeHtmlBuilder reset() {
+    if (sb == null) {
+      sb = new StringBuilder(chunkSize);
+    } else {
+      sb.setLength(0);
+    }
+    if (chunks != null) {
+      chunks.clear();
+    }
+    hashing = false;
+    contentHash = 0;
+    hashedLength = 0;
     return this;
   }
 
+  /** Returns the number of characters the buffer can hold without growing. */
+  @GwtIncompatible
+  int capacity() {
+    return buffer().capacity();
+  }
+
+  /** Returns whether the accumulated HTML has been handed over by {@link #build()}. */
+  boolean isBuilt() {
+    return sb == null;
+  }
+
   /**
    * Returns the safe HTML accumulated in the builder as a {@link SafeHtml}.
    *
    * @return a SafeHtml instance
+   * @throws IllegalStateException if {@link #build()} has been called since the builder was
+   *     created or last {@link #reset() reset}
    */
   public SafeHtml toSafeHtml() {
-    return new SafeHtmlString(sb.toString());
+    String html = buffer().toString();
+    if (chunks == null || chunks.isEmpty()) {
+      return new SafeHtmlString(html, contentHash);
+    }
+    return join(new SafeHtmlString(html));
+  }
+
+  /**
+   * Returns the safe HTML accumulated in the builder as a {@link SafeHtml}, and consumes the
+   * builder.
+   *
+   * <p>Unlike {@link #toSafeHtml()}, this does not copy the HTML: on the server, the returned value
+   * takes over the builder's buffer, and only copies it into a string if its {@link
+   * SafeHtml#asString()} method is called. Appending it to another builder or writing it out does
+   * not copy it at all. In exchange, the builder cannot be used anymore, except to be {@link
+   * #reset() reset}, which gives it a new buffer.
+   *
+   * @return a SafeHtml instance
+   * @throws IllegalStateException if {@link #build()} has been called since the builder was
+   *     created or last {@link #reset() reset}
+   */
+  public SafeHtml build() {
+    StringBuilder buffer = buffer();
+    SafeHtml html;
+    if (chunks == null || chunks.isEmpty()) {
+      html = impl.freeze(buffer, contentHash);
+    } else {
+      html = join(impl.freeze(buffer, 0));
+    }
+    sb = null;
+    if (chunks != null) {
+      chunks.clear();
+    }
+    return html;
+  }
+
+  /**
+   * Returns the buffer to append to. In chunked mode, a full buffer is sealed into a chunk first,
+   * and a new one is started.
+   */
+  private StringBuilder buffer() {
+    if (sb == null) {
+      throw new IllegalStateException("The builder has already been built");
+    }
+    if (chunks != null && sb.length() >= chunkSize) {
+      hashAppended();
+      chunks.add(impl.freeze(sb, 0));
+      sb = new StringBuilder(chunkSize);
+      hashedLength = 0;
+    }
+    return sb;
+  }
+
+  /** Hashes the characters appended to the buffer since the last call, if {@link #hashing}. */
+  private SafeHtmlBuilder hashAppended() {
+    if (hashing) {
+      int length = sb.length();
+      contentHash = Fingerprints.hash(contentHash, sb, hashedLength, length);
+      hashedLength = length;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the sealed chunks followed by {@code last}, knowing the hash of the whole, or just
+   * {@code last} if there are no chunks.
+   */
+  private SafeHtml join(SafeHtml last) {
+    if (chunks == null || chunks.isEmpty()) {
+      return last;
+    }
+    SafeHtml[] fragments = chunks.toArray(new SafeHtml[chunks.size() + 1]);
+    fragments[chunks.size()] = last;
+    return new SafeHtmlRope(fragments, contentHash);
+  }
+
+  private static class JsImpl {
+
+    SafeHtml freeze(StringBuilder sb, long contentHash) {
+      // StringBuilder is emulated on top of a JavaScript string, so toString() does not copy.
+      return new SafeHtmlString(sb.toString(), contentHash);
+    }
+  }
+
+  private static class JvmImpl extends JsImpl {
+
+    @GwtIncompatible
+    @Override
+    SafeHtml freeze(StringBuilder sb, long contentHash) {
+      if (sb.capacity() > 2 * sb.length() + 16) {
+        // Most of the buffer is unused: copying the HTML is cheaper than pinning the buffer.
+        return new SafeHtmlString(sb.toString(), contentHash);
+      }
+      return new SafeHtmlBuffer(sb, contentHash);
+    }
   }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * A bounded pool of {@link SafeHtmlBuilder}s, so that renderers producing many fragments can reuse
+ * the builders' buffers instead of growing new ones each time.
+ *
+ * <p>The pool is shared by all threads rather than being per thread, so it also bounds the number
+ * of idle buffers when running on many (possibly virtual) threads. Builders are handed out by
+ * {@link #acquire()} and handed back by {@link #release(SafeHtmlBuilder)}; when the pool is empty a
+ * new builder is created, and when it is full released builders are simply dropped. Builders whose
+ * buffer grew larger than {@code maximumRetainedCapacity} are dropped too, so that one huge render
+ * does not pin its buffer in the pool.
+ *
+ * <pre class="code">
+ * private static final SafeHtmlBuilderPool POOL = new SafeHtmlBuilderPool(64, 1024, 64 * 1024);
+ *
+ * SafeHtml cell = POOL.build(sb -> sb.appendHtmlConstant("<td>").appendEscaped(value)
+ *     .appendHtmlConstant("</td>"));</pre>
+ *
+ * <p>This class is thread-safe.
+ */
+@GwtIncompatible
+public final class SafeHtmlBuilderPool {
+
+  private final ArrayBlockingQueue<SafeHtmlBuilder> idle;
+  private final int initialCapacity;
+  private final int maximumRetainedCapacity;
+
+  /**
+   * Creates an empty pool.
+   *
+   * @param maximumPooled the maximum number of idle builders kept in the pool
+   * @param initialCapacity the capacity of the builders created by the pool
+   * @param maximumRetainedCapacity the capacity above which released builders are dropped rather
+   *     than pooled
+   * @throws IllegalArgumentException if {@code maximumPooled} is not positive, or {@code
+   *     initialCapacity} is negative or greater than {@code maximumRetainedCapacity}
+   */
+  public SafeHtmlBuilderPool(int maximumPooled, int initialCapacity, int maximumRetainedCapacity) {
+    if (maximumPooled <= 0) {
+      throw new IllegalArgumentException("maximumPooled must be positive: " + maximumPooled);
+    }
+    if (initialCapacity < 0 || initialCapacity > maximumRetainedCapacity) {
+      throw new IllegalArgumentException(
+          "initialCapacity must be between 0 and maximumRetainedCapacity: " + initialCapacity);
+    }
+    this.idle = new ArrayBlockingQueue<>(maximumPooled);
+    this.initialCapacity = initialCapacity;
+    this.maximumRetainedCapacity = maximumRetainedCapacity;
+  }
+
+  /**
+   * Returns an empty builder, taken from the pool if one is available.
+   *
+   * @return a builder that the caller owns until passing it to {@link #release(SafeHtmlBuilder)}
+   */
+  public SafeHtmlBuilder acquire() {
+    SafeHtmlBuilder builder = idle.poll();
+    return builder != null ? builder : new SafeHtmlBuilder(initialCapacity);
+  }
+
+  /**
+   * Hands a builder back to the pool. The builder is reset, and must not be used by the caller
+   * anymore. Builders whose buffer has been handed over by {@link SafeHtmlBuilder#build()} are
+   * dropped, since they have no buffer left to reuse.
+   *
+   * @param builder a builder obtained from {@link #acquire()}
+   */
+  public void release(SafeHtmlBuilder builder) {
+    if (builder.isBuilt() || builder.capacity() > maximumRetainedCapacity) {
+      return;
+    }
+    idle.offer(builder.reset());
+  }
+
+  /**
+   * Builds a {@link SafeHtml} with a pooled builder.
+   *
+   * @param renderer the function appending the HTML to the builder; it must not keep a reference to
+   *     the builder
+   * @return the HTML appended by {@code renderer}
+   */
+  public SafeHtml build(Consumer<? super SafeHtmlBuilder> renderer) {
+    SafeHtmlBuilder builder = acquire();
+    try {
+      renderer.accept(builder);
+      return builder.toSafeHtml();
+    } finally {
+      release(builder);
+    }
+  }
+
+  /** Returns the number of idle builders currently in the pool. */
+  public int size() {
+    return idle.size();
+  }
+}
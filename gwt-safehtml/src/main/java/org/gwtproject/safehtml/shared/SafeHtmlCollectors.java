@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * Utilities for joining many {@link SafeHtml} values, such as the rendered rows of a large grid.
+ *
+ * <p>The {@link #joining()} collectors work with sequential and parallel streams. {@link
+ * #joinParallel(List, Function, SafeHtml, SafeHtml, SafeHtml)} renders the items of a list on a
+ * {@link ForkJoinPool} and is only available on the server.
+ */
+public final class SafeHtmlCollectors {
+
+  /** The number of leaf tasks per worker thread, to balance rows that take unequal time. */
+  @GwtIncompatible private static final int LEAVES_PER_THREAD = 4;
+
+  // prevent instantiation
+  private SafeHtmlCollectors() {}
+
+  /**
+   * Returns a {@link Collector} that concatenates {@link SafeHtml} values, in encounter order.
+   *
+   * @return a collector whose result is the concatenation of the collected values
+   * @see #joining(SafeHtml, SafeHtml, SafeHtml)
+   */
+  public static Collector<SafeHtml, ?, SafeHtml> joining() {
+    return joining(SafeHtmlUtils.EMPTY_SAFE_HTML);
+  }
+
+  /**
+   * Returns a {@link Collector} that concatenates {@link SafeHtml} values, separated by {@code
+   * separator}, in encounter order.
+   *
+   * @param separator the HTML to insert between each value
+   * @return a collector whose result is the concatenation of the collected values
+   * @see #joining(SafeHtml, SafeHtml, SafeHtml)
+   */
+  public static Collector<SafeHtml, ?, SafeHtml> joining(SafeHtml separator) {
+    return joining(separator, SafeHtmlUtils.EMPTY_SAFE_HTML, SafeHtmlUtils.EMPTY_SAFE_HTML);
+  }
+
+  /**
+   * Returns a {@link Collector} that concatenates {@link SafeHtml} values, separated by {@code
+   * separator}, between {@code prefix} and {@code suffix}, in encounter order.
+   *
+   * <p>Like {@link SafeHtmlUtils#concat(SafeHtml...)}, the collector does not copy the values: its
+   * result is only flattened into a single string, presized to the total length, by the first call
+   * to {@link SafeHtml#asString()}, and can be written out without being flattened at all with
+   * {@link SafeHtmlUtils#appendTo(SafeHtml, Appendable)}.
+   *
+   * @param separator the HTML to insert between each value
+   * @param prefix the HTML to insert before the first value
+   * @param suffix the HTML to insert after the last value
+   * @return a collector whose result is the concatenation of the collected values
+   * @throws NullPointerException if any argument is {@code null}, or if a collected value is
+   */
+  public static Collector<SafeHtml, ?, SafeHtml> joining(
+      SafeHtml separator, SafeHtml prefix, SafeHtml suffix) {
+    checkNotNull(separator, "separator");
+    checkNotNull(prefix, "prefix");
+    checkNotNull(suffix, "suffix");
+    return Collector.of(
+        ArrayList::new,
+        (List<SafeHtml> values, SafeHtml value) -> values.add(checkNotNull(value, "value")),
+        (left, right) -> {
+          left.addAll(right);
+          return left;
+        },
+        values -> join(values, separator, prefix, suffix));
+  }
+
+  /**
+   * Renders the items of a list concurrently on the common {@link ForkJoinPool}, and joins the
+   * results in the order of the list.
+   *
+   * @see #joinParallel(ForkJoinPool, List, Function, SafeHtml, SafeHtml, SafeHtml)
+   */
+  @GwtIncompatible
+  public static <T> SafeHtml joinParallel(
+      List<? extends T> items,
+      Function<? super T, ? extends SafeHtml> renderer,
+      SafeHtml separator,
+      SafeHtml prefix,
+      SafeHtml suffix) {
+    return joinParallel(ForkJoinPool.commonPool(), items, renderer, separator, prefix, suffix);
+  }
+
+  /**
+   * Renders the items of a list concurrently on {@code pool}, and joins the results in the order
+   * of the list, separated by {@code separator}, between {@code prefix} and {@code suffix}.
+   *
+   * <p>The list is split into a few ranges per worker thread, and each range is rendered into a
+   * builder of its own. {@code renderer} is thus called concurrently, in no particular order, and
+   * must be thread-safe. Like the result of {@link #joining(SafeHtml, SafeHtml, SafeHtml)}, the
+   * result is only spliced into a single string, presized to the total length, by the first call
+   * to {@link SafeHtml#asString()}, and can be written out without being spliced at all with
+   * {@link SafeHtmlUtils#appendTo(SafeHtml, Appendable)}.
+   *
+   * @param pool the pool to render the items on
+   * @param items the items to render
+   * @param renderer the function rendering each item
+   * @param separator the HTML to insert between each rendered item
+   * @param prefix the HTML to insert before the first rendered item
+   * @param suffix the HTML to insert after the last rendered item
+   * @return the concatenation of the rendered items
+   * @throws NullPointerException if any argument is {@code null}, or if {@code renderer} returns
+   *     {@code null}
+   * @throws RuntimeException if {@code renderer} throws
+   */
+  @GwtIncompatible
+  public static <T> SafeHtml joinParallel(
+      ForkJoinPool pool,
+      List<? extends T> items,
+      Function<? super T, ? extends SafeHtml> renderer,
+      SafeHtml separator,
+      SafeHtml prefix,
+      SafeHtml suffix) {
+    checkNotNull(pool, "pool");
+    checkNotNull(renderer, "renderer");
+    checkNotNull(separator, "separator");
+    checkNotNull(prefix, "prefix");
+    checkNotNull(suffix, "suffix");
+    List<? extends T> rows = items instanceof RandomAccess ? items : new ArrayList<>(items);
+    int size = rows.size();
+    int leaves = pool.getParallelism() * LEAVES_PER_THREAD;
+    int leafSize = Math.max(1, (size + leaves - 1) / leaves);
+    int leafCount = (size + leafSize - 1) / leafSize;
+    // The rendered ranges go between the prefix and the suffix.
+    SafeHtml[] parts = new SafeHtml[leafCount + 2];
+    parts[0] = prefix;
+    parts[leafCount + 1] = suffix;
+    if (leafCount > 0) {
+      pool.invoke(new RenderTask<>(rows, renderer, separator, leafSize, parts, 1, leafCount + 1));
+    }
+    return new SafeHtmlRope(parts);
+  }
+
+  /** Returns the concatenation of {@code values}, as a rope that is not flattened yet. */
+  private static SafeHtml join(
+      List<SafeHtml> values, SafeHtml separator, SafeHtml prefix, SafeHtml suffix) {
+    boolean separated = !values.isEmpty() && SafeHtmlRope.lengthOf(separator) > 0;
+    List<SafeHtml> fragments =
+        new ArrayList<>(2 + (separated ? 2 * values.size() - 1 : values.size()));
+    fragments.add(prefix);
+    for (SafeHtml value : values) {
+      if (separated && fragments.size() > 1) {
+        fragments.add(separator);
+      }
+      fragments.add(value);
+    }
+    fragments.add(suffix);
+    return new SafeHtmlRope(fragments.toArray(new SafeHtml[0]));
+  }
+
+  private static <T> T checkNotNull(T value, String name) {
+    if (value == null) {
+      throw new NullPointerException(name + " is null");
+    }
+    return value;
+  }
+
+  /**
+   * Renders the items of a range of leaves, splitting the range in halves until it is a leaf. Leaf
+   * {@code i} renders the items from {@code (i - 1) * leafSize}, into {@code parts[i]}.
+   */
+  @GwtIncompatible
+  private static class RenderTask<T> extends RecursiveAction {
+
+    private final List<? extends T> items;
+    private final Function<? super T, ? extends SafeHtml> renderer;
+    private final SafeHtml separator;
+    private final int leafSize;
+    private final SafeHtml[] parts;
+    private final int fromLeaf;
+    private final int toLeaf;
+
+    RenderTask(
+        List<? extends T> items,
+        Function<? super T, ? extends SafeHtml> renderer,
+        SafeHtml separator,
+        int leafSize,
+        SafeHtml[] parts,
+        int fromLeaf,
+        int toLeaf) {
+      this.items = items;
+      this.renderer = renderer;
+      this.separator = separator;
+      this.leafSize = leafSize;
+      this.parts = parts;
+      this.fromLeaf = fromLeaf;
+      this.toLeaf = toLeaf;
+    }
+
+    @Override
+    protected void compute() {
+      if (toLeaf - fromLeaf > 1) {
+        int middle = (fromLeaf + toLeaf) >>> 1;
+        invokeAll(
+            new RenderTask<>(items, renderer, separator, leafSize, parts, fromLeaf, middle),
+            new RenderTask<>(items, renderer, separator, leafSize, parts, middle, toLeaf));
+        return;
+      }
+      int from = (fromLeaf - 1) * leafSize;
+      int to = Math.min(items.size(), from + leafSize);
+      SafeHtmlBuilder builder = new SafeHtmlBuilder();
+      for (int i = from; i < to; i++) {
+        if (i > 0) {
+          builder.append(separator);
+        }
+        SafeHtml rendered = renderer.apply(items.get(i));
+        builder.append(checkNotNull(rendered, "rendered item"));
+      }
+      parts[fromLeaf] = builder.build();
+    }
+  }
+}
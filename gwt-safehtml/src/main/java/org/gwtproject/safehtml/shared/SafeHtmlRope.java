@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+import org.gwtproject.safehtml.shared.annotations.IsSafeHtml;
+import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
+
+/**
+ * A concatenation of {@link SafeHtml} fragments, as a tree that is only flattened into a single
+ * string when needed.
+ *
+ * <p>Concatenating is constant time with respect to the length of the fragments: nesting ropes
+ * into other ropes does not copy anything. The first call to {@link #asString()} flattens the tree
+ * into a buffer presized to the total length and then drops the fragments, so later calls are free.
+ * {@link #appendTo(Appendable)} and {@link #appendTo(StringBuilder)} copy the fragments straight to
+ * their destination and never flatten the tree.
+ *
+ * <p>This class is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package.
+ *
+ * <p>All implementors must implement .equals and .hashCode so that they operate just like
+ * String.equals() and String.hashCode().
+ */
+final class SafeHtmlRope implements AppendableSafeHtml, FingerprintedSafeHtml {
+
+  private static final int UNKNOWN_LENGTH = -1;
+
+  /*
+   * Exactly one of fragments and html is non-null once the constructor returns. They are volatile
+   * so that threads racing to flatten the same rope never see both as null: html is always
+   * written before fragments is cleared.
+   */
+  private volatile SafeHtml[] fragments;
+  private volatile String html;
+
+  /** The length of the HTML, or {@link #UNKNOWN_LENGTH} in a rope deserialized by GWT. */
+  private final int length;
+
+  /** The hash of the HTML, see {@link Fingerprints}, or {@code 0} until computed. */
+  private transient volatile long contentHash;
+
+  /**
+   * Constructs a {@link SafeHtmlRope} from its fragments, without copying them.
+   *
+   * @param fragments the fragments to concatenate; the array must not be modified afterwards
+   */
+  SafeHtmlRope(SafeHtml[] fragments) {
+    int length = 0;
+    for (SafeHtml fragment : fragments) {
+      length += lengthOf(fragment);
+    }
+    this.fragments = fragments;
+    this.length = length;
+  }
+
+  /**
+   * Constructs a {@link SafeHtmlRope} from its fragments and the hash of their concatenation.
+   *
+   * @param fragments the fragments to concatenate; the array must not be modified afterwards
+   * @param contentHash the hash of the concatenation, see {@link Fingerprints}, or {@code 0} if
+   *     unknown
+   */
+  SafeHtmlRope(SafeHtml[] fragments, long contentHash) {
+    this(fragments);
+    this.contentHash = contentHash;
+  }
+
+  /**
+   * No-arg constructor for compatibility with GWT serialization, which does not serialize final
+   * fields: the length of a deserialized rope is computed from its HTML.
+   */
+  @SuppressWarnings("unused")
+  private SafeHtmlRope() {
+    length = UNKNOWN_LENGTH;
+  }
+
+  /** Returns the length of the HTML of {@code html}, without materializing it if possible. */
+  static int lengthOf(SafeHtml html) {
+    return html instanceof AppendableSafeHtml
+        ? ((AppendableSafeHtml) html).length()
+        : html.asString().length();
+  }
+
+  @Override
+  public int length() {
+    return length != UNKNOWN_LENGTH ? length : asString().length();
+  }
+
+  /** Returns a hash code for this string. */
+  @Override
+  public int hashCode() {
+    return asString().hashCode();
+  }
+
+  /** Compares this string to the specified object. */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SafeHtml)) {
+      return false;
+    }
+    return asString().equals(((SafeHtml) obj).asString());
+  }
+
+  @Override
+  public String toString() {
+    return "safe: \"" + asString() + "\"";
+  }
+
+  /** {@inheritDoc} */
+  @IsSafeHtml
+  @SuppressIsSafeHtmlCastCheck
+  public String asString() {
+    String flattened = html;
+    if (flattened == null) {
+      SafeHtml[] toFlatten = fragments;
+      if (toFlatten == null) {
+        // Another thread flattened the rope in the meantime.
+        return html;
+      }
+      StringBuilder sb = new StringBuilder(Math.max(length, 0));
+      appendFragments(toFlatten, sb);
+      flattened = sb.toString();
+      html = flattened;
+      fragments = null;
+    }
+    return flattened;
+  }
+
+  /**
+   * Returns the hash of the HTML, computing it on the first call from the hashes of the fragments,
+   * without flattening the rope.
+   */
+  @Override
+  public long contentHash() {
+    long hash = contentHash;
+    if (hash == 0) {
+      SafeHtml[] toHash = fragments;
+      hash = toHash != null ? hashFragments(toHash) : Fingerprints.hash(html);
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public long knownContentHash() {
+    return contentHash;
+  }
+
+  /** Appends the HTML of this rope to {@code sb}, without flattening it. */
+  @Override
+  public void appendTo(StringBuilder sb) {
+    SafeHtml[] toAppend = fragments;
+    if (toAppend == null) {
+      sb.append(html);
+    } else {
+      sb.ensureCapacity(sb.length() + length);
+      appendFragments(toAppend, sb);
+    }
+  }
+
+  /** Appends the HTML of this rope to {@code out}, without flattening it. */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    if (out instanceof StringBuilder) {
+      appendTo((StringBuilder) out);
+      return;
+    }
+    SafeHtml[] toAppend = fragments;
+    if (toAppend == null) {
+      out.append(html);
+    } else {
+      appendFragments(toAppend, out);
+    }
+  }
+
+  /** Serializes this rope as a flat string, rather than as its tree of fragments. */
+  @GwtIncompatible
+  private Object writeReplace() {
+    return new SafeHtmlString(asString());
+  }
+
+  private static void appendFragments(SafeHtml[] fragments, StringBuilder sb) {
+    try {
+      appendFragments(fragments, (Appendable) sb);
+    } catch (IOException e) {
+      // StringBuilder never throws IOException.
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Appends the leaves of the tree to {@code out}, in order. The tree is walked depth-first with an
+   * explicit stack, so that deep nesting cannot overflow the call stack.
+   */
+  private static void appendFragments(SafeHtml[] fragments, Appendable out) throws IOException {
+    ArrayDeque<SafeHtml> pending = new ArrayDeque<>();
+    pushReversed(fragments, pending);
+    while (!pending.isEmpty()) {
+      SafeHtml fragment = pending.pop();
+      SafeHtml[] children =
+          fragment instanceof SafeHtmlRope ? ((SafeHtmlRope) fragment).fragments : null;
+      if (children != null) {
+        pushReversed(children, pending);
+      } else if (fragment instanceof AppendableSafeHtml) {
+        // A rope that has been flattened already, or HTML that is not a string yet.
+        ((AppendableSafeHtml) fragment).appendTo(out);
+      } else {
+        out.append(fragment.asString());
+      }
+    }
+  }
+
+  /**
+   * Combines the hashes of the leaves of the tree, in order. The tree is walked like in {@link
+   * #appendFragments(SafeHtml[], Appendable)}, except that ropes whose hash is known already are
+   * treated as leaves.
+   */
+  private static long hashFragments(SafeHtml[] fragments) {
+    long hash = 0;
+    ArrayDeque<SafeHtml> pending = new ArrayDeque<>();
+    pushReversed(fragments, pending);
+    while (!pending.isEmpty()) {
+      SafeHtml fragment = pending.pop();
+      SafeHtml[] children = null;
+      if (fragment instanceof SafeHtmlRope && ((SafeHtmlRope) fragment).contentHash == 0) {
+        children = ((SafeHtmlRope) fragment).fragments;
+      }
+      if (children != null) {
+        pushReversed(children, pending);
+      } else {
+        hash = Fingerprints.concat(hash, Fingerprints.contentHash(fragment), lengthOf(fragment));
+      }
+    }
+    return hash;
+  }
+
+  private static void pushReversed(SafeHtml[] fragments, ArrayDeque<SafeHtml> pending) {
+    for (int i = fragments.length - 1; i >= 0; i--) {
+      pending.push(fragments[i]);
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package org.gwtproject.safehtml.shared;
 
+import java.nio.charset.StandardCharsets;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
 import org.gwtproject.safehtml.shared.annotations.IsSafeHtml;
 import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
 
@@ -27,10 +29,16 @@ import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
  * <p>All implementors must implement .equals and .hashCode so that they operate just like
  * String.equals() and String.hashCode().
  */
-class SafeHtmlString implements SafeHtml {
+class SafeHtmlString implements FingerprintedSafeHtml {
 
   private String html;
 
+  /** The UTF-8 encoding of the HTML, once computed by {@link #utf8()}. */
+  @GwtIncompatible private transient volatile byte[] utf8;
+
+  /** The hash of the HTML, see {@link Fingerprints}, or {@code 0} until computed. */
+  private transient volatile long contentHash;
+
   /**
    * Constructs a {@link SafeHtmlString} from a string. Callers are responsible for ensuring that
    * the string passed as the argument to this constructor satisfies the constraints of the contract
@@ -45,6 +53,17 @@ class SafeHtmlString implements SafeHtml {
     this.html = html;
   }
 
+  /**
+   * Constructs a {@link SafeHtmlString} from a string whose hash is known already.
+   *
+   * @param html the string to be wrapped as a {@link SafeHtml}
+   * @param contentHash the hash of {@code html}, see {@link Fingerprints}, or {@code 0} if unknown
+   */
+  SafeHtmlString(String html, long contentHash) {
+    this(html);
+    this.contentHash = contentHash;
+  }
+
   /** No-arg constructor for compatibility with GWT serialization. */
   @SuppressWarnings("unused")
   private SafeHtmlString() {}
@@ -75,4 +94,38 @@ class SafeHtmlString implements SafeHtml {
   public String asString() {
     return html;
   }
+
+  /** Returns the hash of the HTML, computing it on the first call. */
+  @Override
+  public long contentHash() {
+    long hash = contentHash;
+    if (hash == 0) {
+      hash = Fingerprints.hash(html);
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  /** Returns the hash of the HTML if {@link #contentHash()} has computed it, or {@code 0}. */
+  @Override
+  public long knownContentHash() {
+    return contentHash;
+  }
+
+  /** Returns the UTF-8 encoding of the HTML, computing it on the first call. */
+  @GwtIncompatible
+  byte[] utf8() {
+    byte[] bytes = utf8;
+    if (bytes == null) {
+      bytes = html.getBytes(StandardCharsets.UTF_8);
+      utf8 = bytes;
+    }
+    return bytes;
+  }
+
+  /** Returns the UTF-8 encoding of the HTML if {@link #utf8()} has computed it, or {@code null}. */
+  @GwtIncompatible
+  byte[] cachedUtf8() {
+    return utf8;
+  }
 }
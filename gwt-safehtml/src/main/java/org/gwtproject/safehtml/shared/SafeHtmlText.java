@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import org.gwtproject.safehtml.shared.annotations.IsSafeHtml;
+import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
+
+/**
+ * A string of text, HTML-escaped on demand and wrapped as an object of type {@link SafeHtml}.
+ *
+ * <p>Appending this HTML to a builder or an {@link Appendable} escapes the text straight into it,
+ * without creating the escaped string. The first call to {@link #asString()} escapes the text and
+ * then drops it, so later calls are free.
+ *
+ * <p>This class is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package.
+ *
+ * <p>All implementors must implement .equals and .hashCode so that they operate just like
+ * String.equals() and String.hashCode().
+ */
+final class SafeHtmlText implements AppendableSafeHtml, FingerprintedSafeHtml {
+
+  /*
+   * Exactly one of text and html is non-null once the constructor returns. They are volatile so
+   * that threads racing to escape the same value never see both as null: html is always written
+   * before text is cleared.
+   */
+  private volatile String text;
+  private volatile String html;
+
+  /** The hash of the HTML, see {@link Fingerprints}, or {@code 0} until computed. */
+  private transient volatile long contentHash;
+
+  /**
+   * Constructs a {@link SafeHtmlText} from a string of text, which is escaped on demand.
+   *
+   * @param text the text to be escaped and wrapped as a {@link SafeHtml}
+   */
+  SafeHtmlText(String text) {
+    if (text == null) {
+      throw new NullPointerException("text is null");
+    }
+    this.text = text;
+  }
+
+  /** No-arg constructor for compatibility with GWT serialization. */
+  @SuppressWarnings("unused")
+  private SafeHtmlText() {}
+
+  /**
+   * Returns the text that has not been escaped yet, or {@code null} if it has been escaped into a
+   * string already, in which case {@link #asString()} returns it.
+   */
+  String text() {
+    return text;
+  }
+
+  @Override
+  public int length() {
+    String toEscape = text;
+    if (toEscape == null) {
+      return html.length();
+    }
+    return SafeHtmlUtils.htmlEscapedLength(toEscape);
+  }
+
+  /** Returns a hash code for this string. */
+  @Override
+  public int hashCode() {
+    return asString().hashCode();
+  }
+
+  /** Compares this string to the specified object. */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SafeHtml)) {
+      return false;
+    }
+    return asString().equals(((SafeHtml) obj).asString());
+  }
+
+  @Override
+  public String toString() {
+    return "safe: \"" + asString() + "\"";
+  }
+
+  /** {@inheritDoc} */
+  @IsSafeHtml
+  @SuppressIsSafeHtmlCastCheck
+  public String asString() {
+    String escaped = html;
+    if (escaped == null) {
+      String toEscape = text;
+      if (toEscape == null) {
+        // Another thread escaped the text in the meantime.
+        return html;
+      }
+      escaped = SafeHtmlUtils.htmlEscape(toEscape);
+      html = escaped;
+      text = null;
+    }
+    return escaped;
+  }
+
+  /** Returns the hash of the HTML, computing it on the first call without escaping the text. */
+  @Override
+  public long contentHash() {
+    long hash = contentHash;
+    if (hash == 0) {
+      String toHash = text;
+      hash = toHash != null ? Fingerprints.hashEscaped(0, toHash) : Fingerprints.hash(html);
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public long knownContentHash() {
+    return contentHash;
+  }
+
+  /** Appends the HTML to {@code sb}, escaping the text straight into it if needed. */
+  @Override
+  public void appendTo(StringBuilder sb) {
+    String toEscape = text;
+    if (toEscape == null) {
+      sb.append(html);
+    } else {
+      SafeHtmlUtils.htmlEscapeTo(toEscape, sb);
+    }
+  }
+
+  /** Appends the HTML to {@code out}, escaping the text straight into it if needed. */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    String toEscape = text;
+    if (toEscape == null) {
+      out.append(html);
+    } else {
+      SafeHtmlUtils.htmlEscapeTo(toEscape, out);
+    }
+  }
+}
@@ -17,6 +17,9 @@ package org.gwtproject.safehtml.shared;
 
 import elemental2.core.JsRegExp;
 import elemental2.core.JsString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
 import org.gwtproject.safehtml.shared.annotations.IsSafeHtml;
 import org.gwtproject.safehtml.shared.annotations.SuppressIsSafeHtmlCastCheck;
@@ -28,7 +31,17 @@ public final class SafeHtmlUtils {
   public static final SafeHtml EMPTY_SAFE_HTML = new SafeHtmlString("");
 
   public static final String HTML_CHARS = "[&<>'\"]";
-  private static final String HTML_ENTITY_REGEX = "[a-z]+|#[0-9]+|#x[0-9a-fA-F]+";
+
+  /**
+   * The characters windows-1252 assigns to the bytes 0x80 to 0x9F, with 0 for the bytes it leaves
+   * undefined.
+   */
+  private static final String WINDOWS_1252_C1 =
+      "\u20AC\u0000\u201A\u0192\u201E\u2026\u2020\u2021"
+          + "\u02C6\u2030\u0160\u2039\u0152\u0000\u017D\u0000"
+          + "\u0000\u2018\u2019\u201C\u201D\u2022\u2013\u2014"
+          + "\u02DC\u2122\u0161\u203A\u0153\u0000\u017E\u0178";
+
   private static final JvmImpl impl = new JvmImpl();
 
   // prevent instantiation
@@ -73,11 +86,15 @@ public final class SafeHtmlUtils {
   /**
    * Returns a {@link SafeHtml} containing the escaped string.
    *
+   * <p>The string is only escaped on demand: appending the result to a {@link SafeHtmlBuilder}, or
+   * with {@link #appendTo(SafeHtml, Appendable)}, escapes it straight into the target, and the
+   * first call to {@link SafeHtml#asString()} escapes it once and keeps the result.
+   *
    * @param s the input String
    * @return a {@link SafeHtml} instance
    */
   public static SafeHtml fromString(String s) {
-    return new SafeHtmlString(htmlEscape(s));
+    return new SafeHtmlText(s);
   }
 
   /**
@@ -95,11 +112,15 @@ public final class SafeHtmlUtils {
    *   <li>Check if any metachar is present using a regex, then use #3.
    * </ol>
    *
-   * <p>For all browsers #4 was found to be the fastest, and is used below.
+   * <p>For all browsers #4 was found to be the fastest, and is used in JavaScript. A single global
+   * replace of all the metachars with a replacer function is slower still, as it calls back into
+   * script for every match; see {@code GwtEscapingBenchmark}.
    *
    * <p>The only out-lier was firefox with #6 being the optimal option, but #6 performs considerably
    * worse in all other browsers.
    *
+   * <p>On the JVM, the string is escaped in a single table-driven loop.
+   *
    * @param s the string to be escaped
    * @return the input string, with all occurrences of HTML meta-characters replaced with their
    *     corresponding HTML Entity References
@@ -108,6 +129,262 @@ public final class SafeHtmlUtils {
     return impl.htmlEscape(s);
   }
 
+  /** Returns the length of {@code s} once it has been HTML-escaped. */
+  static int htmlEscapedLength(String s) {
+    return impl.htmlEscapedLength(s);
+  }
+
+  /**
+   * HTML-escapes a character sequence directly into a {@link StringBuilder}, without creating an
+   * intermediate escaped {@link String}.
+   *
+   * @param s the character sequence to be escaped
+   * @param sb the builder to append the escaped characters to
+   * @see #htmlEscape(String)
+   */
+  public static void htmlEscapeTo(CharSequence s, StringBuilder sb) {
+    impl.htmlEscapeTo(s, 0, s.length(), sb);
+  }
+
+  /**
+   * HTML-escapes a character sequence directly into an {@link Appendable}, without creating an
+   * intermediate escaped {@link String}.
+   *
+   * @param s the character sequence to be escaped
+   * @param out the target to append the escaped characters to
+   * @throws IOException if {@code out} throws one
+   * @see #htmlEscape(String)
+   */
+  public static void htmlEscapeTo(CharSequence s, Appendable out) throws IOException {
+    htmlEscapeTo(s, 0, s.length(), out);
+  }
+
+  /**
+   * HTML-escapes a range of a character sequence, without copying the range first.
+   *
+   * @param s the character sequence containing the range to be escaped
+   * @param start the index of the first character to be escaped
+   * @param end the index after the last character to be escaped
+   * @return the characters of {@code s} from {@code start} to {@code end}, with all occurrences of
+   *     HTML meta-characters replaced with their corresponding HTML Entity References
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code s.length()}
+   * @see #htmlEscape(String)
+   */
+  public static String htmlEscape(CharSequence s, int start, int end) {
+    checkRange(s, start, end);
+    return impl.htmlEscape(s, start, end);
+  }
+
+  /**
+   * HTML-escapes a range of a character sequence directly into a {@link StringBuilder}, without
+   * copying the range first.
+   *
+   * @param s the character sequence containing the range to be escaped
+   * @param start the index of the first character to be escaped
+   * @param end the index after the last character to be escaped
+   * @param sb the builder to append the escaped characters to
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code s.length()}
+   * @see #htmlEscape(String)
+   */
+  public static void htmlEscapeTo(CharSequence s, int start, int end, StringBuilder sb) {
+    checkRange(s, start, end);
+    impl.htmlEscapeTo(s, start, end, sb);
+  }
+
+  /**
+   * HTML-escapes a range of a character sequence directly into an {@link Appendable}, without
+   * copying the range first.
+   *
+   * @param s the character sequence containing the range to be escaped
+   * @param start the index of the first character to be escaped
+   * @param end the index after the last character to be escaped
+   * @param out the target to append the escaped characters to
+   * @throws IOException if {@code out} throws one
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code s.length()}
+   * @see #htmlEscape(String)
+   */
+  public static void htmlEscapeTo(CharSequence s, int start, int end, Appendable out)
+      throws IOException {
+    checkRange(s, start, end);
+    if (out instanceof StringBuilder) {
+      impl.htmlEscapeTo(s, start, end, (StringBuilder) out);
+    } else {
+      impl.htmlEscapeTo(s, start, end, out);
+    }
+  }
+
+  /**
+   * HTML-escapes a string for use as text content, i.e. between tags.
+   *
+   * <p>Only {@code &}, {@code <} and {@code >} are escaped, as quotes have no special meaning in
+   * text content. The result must not be used in an attribute value; use {@link
+   * #htmlEscape(String)} or {@link #htmlEscapeDoubleQuotedAttribute(String)} there.
+   *
+   * @param s the string to be escaped
+   * @return the input string, with all occurrences of {@code &}, {@code <} and {@code >} replaced
+   *     with their corresponding HTML Entity References; the input string itself if it contains
+   *     none of them
+   */
+  public static String htmlEscapeText(String s) {
+    return impl.htmlEscapeText(s);
+  }
+
+  /**
+   * HTML-escapes a character sequence for use as text content directly into a {@link
+   * StringBuilder}.
+   *
+   * @param s the character sequence to be escaped
+   * @param sb the builder to append the escaped characters to
+   * @see #htmlEscapeText(String)
+   */
+  public static void htmlEscapeTextTo(CharSequence s, StringBuilder sb) {
+    impl.htmlEscapeTextTo(s, sb);
+  }
+
+  /**
+   * HTML-escapes a string for use in the value of a double-quoted attribute.
+   *
+   * <p>Only {@code &} and {@code "} are escaped, as nothing else can end or alter such a value. The
+   * result must not be used in single-quoted or unquoted attribute values, or as text content; use
+   * {@link #htmlEscape(String)} there.
+   *
+   * @param s the string to be escaped
+   * @return the input string, with all occurrences of {@code &} and {@code "} replaced with their
+   *     corresponding HTML Entity References; the input string itself if it contains none of them
+   */
+  public static String htmlEscapeDoubleQuotedAttribute(String s) {
+    return impl.htmlEscapeDoubleQuotedAttribute(s);
+  }
+
+  /**
+   * HTML-escapes a character sequence for use in the value of a double-quoted attribute directly
+   * into a {@link StringBuilder}.
+   *
+   * @param s the character sequence to be escaped
+   * @param sb the builder to append the escaped characters to
+   * @see #htmlEscapeDoubleQuotedAttribute(String)
+   */
+  public static void htmlEscapeDoubleQuotedAttributeTo(CharSequence s, StringBuilder sb) {
+    impl.htmlEscapeDoubleQuotedAttributeTo(s, sb);
+  }
+
+  /**
+   * Returns the concatenation of several {@link SafeHtml} values.
+   *
+   * <p>The fragments are not copied: the result is a tree of fragments that is only flattened into
+   * a single string, once, by the first call to {@link SafeHtml#asString()}. Concatenating nested
+   * values thus copies each character once, however deep the nesting. Appending the result to a
+   * {@link SafeHtmlBuilder}, or with {@link #appendTo(SafeHtml, Appendable)}, copies the fragments
+   * without flattening them at all.
+   *
+   * @param fragments the values to concatenate, in order
+   * @return a {@link SafeHtml} whose string is the concatenation of the strings of {@code
+   *     fragments}
+   */
+  public static SafeHtml concat(SafeHtml... fragments) {
+    switch (fragments.length) {
+      case 0:
+        return EMPTY_SAFE_HTML;
+      case 1:
+        if (fragments[0] == null) {
+          throw new NullPointerException("fragments[0] is null");
+        }
+        return fragments[0];
+      default:
+        SafeHtml[] copy = new SafeHtml[fragments.length];
+        for (int i = 0; i < fragments.length; i++) {
+          if (fragments[i] == null) {
+            throw new NullPointerException("fragments[" + i + "] is null");
+          }
+          copy[i] = fragments[i];
+        }
+        return new SafeHtmlRope(copy);
+    }
+  }
+
+  /**
+   * Appends the HTML of a {@link SafeHtml} to an {@link Appendable}. Values built by {@link
+   * #concat(SafeHtml...)} are written fragment by fragment, without being flattened into a string
+   * first, and values built by {@link #fromString(String)} are escaped straight into {@code out}.
+   *
+   * @param html the value to append
+   * @param out the target to append the HTML to
+   * @throws IOException if {@code out} throws one
+   */
+  public static void appendTo(SafeHtml html, Appendable out) throws IOException {
+    if (html instanceof AppendableSafeHtml) {
+      ((AppendableSafeHtml) html).appendTo(out);
+    } else {
+      out.append(html.asString());
+    }
+  }
+
+  /**
+   * Returns the UTF-8 encoding of the HTML of a {@link SafeHtml}, as a read-only buffer positioned
+   * at its start.
+   *
+   * <p>For values built by {@link #fromSafeConstant(String)}, {@link #fromTrustedString(String)}
+   * or generated templates, the encoding is computed on the first call and kept by the value:
+   * later calls return a new view of the same bytes without any encoding work, and {@link
+   * Utf8SafeHtmlBuilder} copies those bytes in bulk rather than encoding the value again. This is
+   * meant for long-lived fragments written to many responses, such as headers and footers kept in
+   * constants, since the value then holds both its string and its bytes. Other values are encoded
+   * on each call.
+   *
+   * @param html the value to encode
+   * @return a read-only buffer holding the UTF-8 encoding of {@code html.asString()}
+   */
+  @GwtIncompatible
+  public static ByteBuffer utf8Of(SafeHtml html) {
+    byte[] bytes;
+    if (html instanceof SafeHtmlString) {
+      bytes = ((SafeHtmlString) html).utf8();
+    } else if (html instanceof OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) {
+      bytes = ((OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) html).utf8();
+    } else {
+      bytes = html.asString().getBytes(StandardCharsets.UTF_8);
+    }
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the UTF-8 encoding of {@code html} if {@link #utf8Of(SafeHtml)} has computed and kept
+   * it, or {@code null}. The returned array must not be modified.
+   */
+  @GwtIncompatible
+  static byte[] cachedUtf8Of(SafeHtml html) {
+    if (html instanceof SafeHtmlString) {
+      return ((SafeHtmlString) html).cachedUtf8();
+    } else if (html instanceof OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) {
+      return ((OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml) html).cachedUtf8();
+    }
+    return null;
+  }
+
+  /**
+   * Returns a 64-bit fingerprint of the HTML of a {@link SafeHtml}, suitable as an HTTP entity tag:
+   * values with equal {@link SafeHtml#asString()} have equal fingerprints, and values with
+   * different HTML almost certainly have different ones.
+   *
+   * <p>The fingerprint is computed at most once per value and kept by it. Values built by a {@link
+   * SafeHtmlBuilder} that {@link SafeHtmlBuilder#trackFingerprint() tracks} it know it already, and
+   * values built by {@link #concat(SafeHtml...)} or {@link SafeHtmlCollectors} combine the
+   * fingerprints of their fragments without hashing their HTML again. Values built by {@link
+   * #fromString(String)} are hashed without being escaped into a string.
+   *
+   * <p>The fingerprint is not a cryptographic hash: it detects changes, but HTML with a given
+   * fingerprint can be crafted on purpose, so it must not be used to authenticate content.
+   *
+   * @param html the value to fingerprint
+   * @return the fingerprint of {@code html.asString()}
+   */
+  public static long fingerprint(SafeHtml html) {
+    return Fingerprints.fingerprint(Fingerprints.contentHash(html));
+  }
+
   /**
    * Returns a {@link SafeHtml} constructed from a trusted string, i.e., without escaping the
    * string. No checks are performed. The calling code should be carefully reviewed to ensure the
@@ -154,6 +431,9 @@ public final class SafeHtmlUtils {
   /**
    * HTML-escapes a string, but does not double-escape HTML-entities already present in the string.
    *
+   * <p>Numeric entity references are left alone, as are named ones that are HTML5 named character
+   * references and end with a semicolon; any other ampersand is escaped.
+   *
    * @param text the string to be escaped
    * @return the input string, with all occurrences of HTML meta-characters replaced with their
    *     corresponding HTML Entity References, with the exception that ampersand characters are not
@@ -162,42 +442,230 @@ public final class SafeHtmlUtils {
   @IsSafeHtml
   @SuppressIsSafeHtmlCastCheck
   public static String htmlEscapeAllowEntities(String text) {
-    StringBuilder escaped = new StringBuilder();
-
-    boolean firstSegment = true;
-    for (String segment : text.split("&", -1)) {
-      if (firstSegment) {
-        /*
-         * The first segment is never part of an entity reference, so we always
-         * escape it.
-         * Note that if the input starts with an ampersand, we will get an empty
-         * segment before that.
-         */
-        firstSegment = false;
-        escaped.append(htmlEscape(segment));
+    StringBuilder escaped = new StringBuilder(text.length());
+    htmlEscapeAllowEntitiesTo(text, escaped);
+    return escaped.toString();
+  }
+
+  /**
+   * HTML-escapes a character sequence directly into a {@link StringBuilder}, but does not
+   * double-escape HTML-entities already present in the sequence.
+   *
+   * @param text the character sequence to be escaped
+   * @param sb the builder to append the escaped characters to
+   * @see #htmlEscapeAllowEntities(String)
+   */
+  public static void htmlEscapeAllowEntitiesTo(CharSequence text, StringBuilder sb) {
+    htmlEscapeAllowEntitiesTo(text, 0, text.length(), sb);
+  }
+
+  /**
+   * HTML-escapes {@code text[start, end)} into {@code sb}, leaving entity references untouched.
+   *
+   * <p>This is a single forward scan: runs of text between entity references are escaped in bulk,
+   * and entity references are copied verbatim.
+   */
+  static void htmlEscapeAllowEntitiesTo(CharSequence text, int start, int end, StringBuilder sb) {
+    int unescaped = start;
+    for (int i = start; i < end; i++) {
+      if (text.charAt(i) != '&') {
+        continue;
+      }
+      int entityEnd = entityReferenceEnd(text, i, end);
+      if (entityEnd == -1) {
+        // Not an entity reference: the ampersand is escaped along with the rest of the run.
         continue;
       }
+      impl.htmlEscapeTo(text, unescaped, i, sb);
+      sb.append(text, i, entityEnd);
+      unescaped = entityEnd;
+      i = entityEnd - 1;
+    }
+    impl.htmlEscapeTo(text, unescaped, end, sb);
+  }
 
-      int entityEnd = segment.indexOf(';');
-      if (entityEnd > 0 && segment.substring(0, entityEnd).matches(HTML_ENTITY_REGEX)) {
-        // Append the entity without escaping.
-        escaped.append("&").append(segment.substring(0, entityEnd + 1));
+  /**
+   * Returns the index after the entity reference starting with the ampersand at {@code ampersand},
+   * or -1 if there is no entity reference there.
+   *
+   * <p>An entity reference is one of {@code &#123;}, {@code &#x1F;}, or {@code &name;} where {@code
+   * name} is one of the HTML5 named character references.
+   */
+  static int entityReferenceEnd(CharSequence text, int ampersand, int end) {
+    int i = ampersand + 1;
+    if (i == end) {
+      return -1;
+    }
+    if (text.charAt(i) != '#') {
+      // Named references always end with the semicolon, which is never followed by another edge.
+      int node = HtmlEntities.ROOT;
+      while (i < end && (node = HtmlEntities.child(node, text.charAt(i))) != -1) {
+        if (text.charAt(i++) == ';') {
+          return i;
+        }
+      }
+      return -1;
+    }
+    i++;
+    int digitsStart;
+    if (i < end && text.charAt(i) == 'x') {
+      digitsStart = ++i;
+      while (i < end && isHexDigit(text.charAt(i))) {
+        i++;
+      }
+    } else {
+      digitsStart = i;
+      while (i < end && isDigit(text.charAt(i))) {
+        i++;
+      }
+    }
+    if (i == digitsStart || i == end || text.charAt(i) != ';') {
+      return -1;
+    }
+    return i + 1;
+  }
 
-        // Append the rest of the segment, escaped.
-        escaped.append(htmlEscape(segment.substring(entityEnd + 1)));
+  /**
+   * Decodes the character references in a string of HTML text, appending the resulting plain text
+   * to {@code out}.
+   *
+   * <p>This is the inverse of {@link #htmlEscape(String)} and {@link
+   * #htmlEscapeAllowEntities(String)}, and follows the rules HTML5 uses for text content: named
+   * references are matched against the HTML5 named character references (including the legacy
+   * ones that may omit the trailing semicolon), and numeric references are decoded with the same
+   * replacements a browser makes for invalid code points. Anything that is not a character
+   * reference, including markup, is copied unchanged.
+   *
+   * @param text the HTML text to decode
+   * @param out the destination to append the decoded text to
+   * @throws IOException if {@code out} throws
+   */
+  public static void htmlUnescape(CharSequence text, Appendable out) throws IOException {
+    int length = text.length();
+    int copied = 0;
+    for (int i = 0; i < length; i++) {
+      if (text.charAt(i) != '&') {
+        continue;
+      }
+      int referenceEnd = appendUnescapedReference(text, i, length, out, copied);
+      if (referenceEnd != -1) {
+        copied = referenceEnd;
+        i = referenceEnd - 1;
+      }
+    }
+    out.append(text, copied, length);
+  }
+
+  /**
+   * If a character reference starts with the ampersand at {@code ampersand}, appends {@code
+   * text[copied, ampersand)} and the decoded reference to {@code out}, and returns the index after
+   * the reference. Otherwise appends nothing and returns -1.
+   */
+  private static int appendUnescapedReference(
+      CharSequence text, int ampersand, int end, Appendable out, int copied) throws IOException {
+    int i = ampersand + 1;
+    if (i == end) {
+      return -1;
+    }
+    if (text.charAt(i) != '#') {
+      // Named references match the longest name in the table.
+      String replacement = null;
+      int referenceEnd = -1;
+      int node = HtmlEntities.ROOT;
+      while (i < end && (node = HtmlEntities.child(node, text.charAt(i))) != -1) {
+        i++;
+        if (HtmlEntities.replacement(node) != null) {
+          replacement = HtmlEntities.replacement(node);
+          referenceEnd = i;
+        }
+      }
+      if (replacement == null) {
+        return -1;
+      }
+      out.append(text, copied, ampersand).append(replacement);
+      return referenceEnd;
+    }
+
+    i++;
+    boolean hex = i < end && (text.charAt(i) == 'x' || text.charAt(i) == 'X');
+    if (hex) {
+      i++;
+    }
+    int digitsStart = i;
+    int codePoint = 0;
+    for (; i < end; i++) {
+      char c = text.charAt(i);
+      int digit;
+      if (isDigit(c)) {
+        digit = c - '0';
+      } else if (hex && isHexDigit(c)) {
+        digit = (c | 0x20) - 'a' + 10;
       } else {
-        // The segment did not start with an entity reference, so escape the
-        // whole segment.
-        escaped.append("&amp;").append(htmlEscape(segment));
+        break;
       }
+      // Saturate rather than overflow, any value past the last code point is invalid anyway.
+      codePoint = Math.min(codePoint * (hex ? 16 : 10) + digit, Character.MAX_CODE_POINT + 1);
+    }
+    if (i == digitsStart) {
+      return -1;
+    }
+    if (i < end && text.charAt(i) == ';') {
+      i++;
     }
+    out.append(text, copied, ampersand);
+    appendCodePoint(numericReferenceCodePoint(codePoint), out);
+    return i;
+  }
 
-    return escaped.toString();
+  /** Applies the replacements HTML5 makes for the code point of a numeric character reference. */
+  private static int numericReferenceCodePoint(int codePoint) {
+    if (codePoint == 0
+        || codePoint > Character.MAX_CODE_POINT
+        || (Character.MIN_SURROGATE <= codePoint && codePoint <= Character.MAX_SURROGATE)) {
+      return 0xFFFD;
+    }
+    if (0x80 <= codePoint && codePoint <= 0x9F) {
+      // C1 controls are interpreted as windows-1252, where that encoding defines a character.
+      char c = WINDOWS_1252_C1.charAt(codePoint - 0x80);
+      return c == 0 ? codePoint : c;
+    }
+    return codePoint;
+  }
+
+  private static void appendCodePoint(int codePoint, Appendable out) throws IOException {
+    if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+      out.append((char) codePoint);
+    } else {
+      int offset = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+      out.append((char) (Character.MIN_HIGH_SURROGATE + (offset >>> 10)))
+          .append((char) (Character.MIN_LOW_SURROGATE + (offset & 0x3FF)));
+    }
+  }
+
+  private static boolean isDigit(char c) {
+    return '0' <= c && c <= '9';
+  }
+
+  static boolean isHexDigit(char c) {
+    return ('0' <= c && c <= '9') || ('a' <= c && c <= 'f') || ('A' <= c && c <= 'F');
+  }
+
+  /**
+   * Checks that {@code [start, end)} is a valid range of {@code s}, in the same way as {@link
+   * CharSequence#subSequence(int, int)} does.
+   */
+  static void checkRange(CharSequence s, int start, int end) {
+    if (start < 0 || start > end || end > s.length()) {
+      throw new IndexOutOfBoundsException(
+          "start " + start + ", end " + end + ", length " + s.length());
+    }
   }
 
   static class JsImpl {
 
     private static final JsRegExp HTML_CHARS_RE = new JsRegExp(HTML_CHARS);
+    private static final JsRegExp TEXT_CHARS_RE = new JsRegExp("[&<>]");
+    private static final JsRegExp ATTRIBUTE_CHARS_RE = new JsRegExp("[&\"]");
     private static final JsRegExp AMP_RE = new JsRegExp("&", "g");
     private static final JsRegExp GT_RE = new JsRegExp(">", "g");
     private static final JsRegExp LT_RE = new JsRegExp("<", "g");
@@ -208,49 +676,244 @@ public final class SafeHtmlUtils {
       if (!HTML_CHARS_RE.test(s)) {
         return s;
       }
-      if (s.indexOf("&") != -1) {
-        s = new JsString(s).replace(AMP_RE, "&amp;");
-      }
-      if (s.indexOf("<") != -1) {
-        s = new JsString(s).replace(LT_RE, "&lt;");
-      }
-      if (s.indexOf(">") != -1) {
-        s = new JsString(s).replace(GT_RE, "&gt;");
+      s = escapeTextChars(s);
+      s = replace(s, "\"", QUOT_RE, "&quot;");
+      return replace(s, "'", SQUOT_RE, "&#39;");
+    }
+
+    int htmlEscapedLength(String s) {
+      if (!HTML_CHARS_RE.test(s)) {
+        return s.length();
       }
-      if (s.indexOf("\"") != -1) {
-        s = new JsString(s).replace(QUOT_RE, "&quot;");
+      // Count the meta-characters with native indexOf calls, rather than escaping the string only
+      // to measure it and then escaping it again to append it.
+      return s.length()
+          + 4 * count(s, '&')
+          + 3 * (count(s, '<') + count(s, '>'))
+          + 5 * count(s, '"')
+          + 4 * count(s, '\'');
+    }
+
+    String htmlEscapeText(String s) {
+      return TEXT_CHARS_RE.test(s) ? escapeTextChars(s) : s;
+    }
+
+    void htmlEscapeTextTo(CharSequence s, StringBuilder sb) {
+      sb.append(htmlEscapeText(s.toString()));
+    }
+
+    String htmlEscapeDoubleQuotedAttribute(String s) {
+      if (!ATTRIBUTE_CHARS_RE.test(s)) {
+        return s;
       }
-      if (s.indexOf("'") != -1) {
-        s = new JsString(s).replace(SQUOT_RE, "&#39;");
+      s = replace(s, "&", AMP_RE, "&amp;");
+      return replace(s, "\"", QUOT_RE, "&quot;");
+    }
+
+    void htmlEscapeDoubleQuotedAttributeTo(CharSequence s, StringBuilder sb) {
+      sb.append(htmlEscapeDoubleQuotedAttribute(s.toString()));
+    }
+
+    String htmlEscape(CharSequence s, int start, int end) {
+      return htmlEscape(s.subSequence(start, end).toString());
+    }
+
+    void htmlEscapeTo(CharSequence s, int start, int end, StringBuilder sb) {
+      sb.append(htmlEscape(s, start, end));
+    }
+
+    void htmlEscapeTo(CharSequence s, int start, int end, Appendable out) throws IOException {
+      out.append(htmlEscape(s, start, end));
+    }
+
+    /** Returns the number of occurrences of {@code c} in {@code s}. */
+    private static int count(String s, char c) {
+      int count = 0;
+      for (int i = s.indexOf(c); i != -1; i = s.indexOf(c, i + 1)) {
+        count++;
       }
-      return s;
+      return count;
+    }
+
+    /** Escapes the meta-characters of text content, the ampersand first. */
+    private static String escapeTextChars(String s) {
+      s = replace(s, "&", AMP_RE, "&amp;");
+      s = replace(s, "<", LT_RE, "&lt;");
+      return replace(s, ">", GT_RE, "&gt;");
+    }
+
+    /**
+     * Replaces all occurrences of {@code c}, matched by the global {@code regExp}, with {@code
+     * replacement}. A native replace with a string replacement is faster than a single replace of
+     * all meta-characters with a replacer function, which calls back into script for every match;
+     * see {@code GwtEscapingBenchmark}.
+     */
+    private static String replace(String s, String c, JsRegExp regExp, String replacement) {
+      return s.indexOf(c) != -1 ? new JsString(s).replace(regExp, replacement) : s;
     }
   }
 
   static class JvmImpl extends JsImpl {
 
+    /**
+     * Replacement strings for the HTML meta-characters, indexed by character; {@code null} for
+     * characters that don't need escaping. All meta-characters are below {@code '>' + 1}, so
+     * anything beyond the end of the table never needs escaping.
+     */
+    private static final String[] HTML_ESCAPES = new String['>' + 1];
+
+    /** Like {@link #HTML_ESCAPES}, for the meta-characters of text content. */
+    private static final String[] TEXT_ESCAPES = new String['>' + 1];
+
+    /** Like {@link #HTML_ESCAPES}, for the meta-characters of double-quoted attribute values. */
+    private static final String[] ATTRIBUTE_ESCAPES = new String['>' + 1];
+
+    static {
+      HTML_ESCAPES['&'] = TEXT_ESCAPES['&'] = ATTRIBUTE_ESCAPES['&'] = "&amp;";
+      HTML_ESCAPES['<'] = TEXT_ESCAPES['<'] = "&lt;";
+      HTML_ESCAPES['>'] = TEXT_ESCAPES['>'] = "&gt;";
+      HTML_ESCAPES['"'] = ATTRIBUTE_ESCAPES['"'] = "&quot;";
+      HTML_ESCAPES['\''] = "&#39;";
+    }
+
     @GwtIncompatible
     @Override
     String htmlEscape(String s) {
-      if (!s.matches("[\\s\\S]*" + HTML_CHARS + "[\\s\\S]*")) {
-        return s;
-      }
-      if (s.indexOf("&") != -1) {
-        s = s.replaceAll("&", "&amp;");
+      return htmlEscape(s, 0, s.length());
+    }
+
+    @GwtIncompatible
+    @Override
+    String htmlEscape(CharSequence s, int start, int end) {
+      return escape(s, start, end, HTML_ESCAPES);
+    }
+
+    @GwtIncompatible
+    @Override
+    void htmlEscapeTo(CharSequence s, int start, int end, StringBuilder sb) {
+      sb.ensureCapacity(sb.length() + end - start);
+      appendEscaped(s, start, end, sb, HTML_ESCAPES);
+    }
+
+    @GwtIncompatible
+    @Override
+    void htmlEscapeTo(CharSequence s, int start, int end, Appendable out) throws IOException {
+      int unescaped = start;
+      for (int i = start; i < end; i++) {
+        String escape = escapeOf(s.charAt(i));
+        if (escape != null) {
+          out.append(s, unescaped, i).append(escape);
+          unescaped = i + 1;
+        }
       }
-      if (s.indexOf("<") != -1) {
-        s = s.replaceAll("<", "&lt;");
+      out.append(s, unescaped, end);
+    }
+
+    @GwtIncompatible
+    @Override
+    int htmlEscapedLength(String s) {
+      return escapedLength(s, 0, s.length(), HTML_ESCAPES);
+    }
+
+    @GwtIncompatible
+    @Override
+    String htmlEscapeText(String s) {
+      return escape(s, 0, s.length(), TEXT_ESCAPES);
+    }
+
+    @GwtIncompatible
+    @Override
+    void htmlEscapeTextTo(CharSequence s, StringBuilder sb) {
+      sb.ensureCapacity(sb.length() + s.length());
+      appendEscaped(s, 0, s.length(), sb, TEXT_ESCAPES);
+    }
+
+    @GwtIncompatible
+    @Override
+    String htmlEscapeDoubleQuotedAttribute(String s) {
+      return escape(s, 0, s.length(), ATTRIBUTE_ESCAPES);
+    }
+
+    @GwtIncompatible
+    @Override
+    void htmlEscapeDoubleQuotedAttributeTo(CharSequence s, StringBuilder sb) {
+      sb.ensureCapacity(sb.length() + s.length());
+      appendEscaped(s, 0, s.length(), sb, ATTRIBUTE_ESCAPES);
+    }
+
+    /**
+     * Returns the entity reference replacing {@code c}, or {@code null} if {@code c} is not an HTML
+     * meta-character.
+     */
+    static String escapeOf(char c) {
+      return escapeOf(c, HTML_ESCAPES);
+    }
+
+    /**
+     * Returns the replacement of {@code c} in {@code escapes}, or {@code null} if {@code c} needs
+     * no escaping.
+     */
+    private static String escapeOf(char c, String[] escapes) {
+      return c < escapes.length ? escapes[c] : null;
+    }
+
+    /**
+     * Returns {@code s[start, end)} with the characters that have a replacement in {@code escapes}
+     * replaced.
+     */
+    private static String escape(CharSequence s, int start, int end, String[] escapes) {
+      int firstEscape = indexOfEscapedChar(s, start, end, escapes);
+      if (firstEscape == -1) {
+        // Returns s itself if it is a String and the range covers all of it.
+        return s.subSequence(start, end).toString();
       }
-      if (s.indexOf(">") != -1) {
-        s = s.replaceAll(">", "&gt;");
+      StringBuilder sb =
+          new StringBuilder(firstEscape - start + escapedLength(s, firstEscape, end, escapes));
+      sb.append(s, start, firstEscape);
+      appendEscaped(s, firstEscape, end, sb, escapes);
+      return sb.toString();
+    }
+
+    /**
+     * Returns the index of the first character in {@code s[start, end)} that has a replacement in
+     * {@code escapes}, or -1 if there is none.
+     */
+    private static int indexOfEscapedChar(CharSequence s, int start, int end, String[] escapes) {
+      for (int i = start; i < end; i++) {
+        if (escapeOf(s.charAt(i), escapes) != null) {
+          return i;
+        }
       }
-      if (s.indexOf("\"") != -1) {
-        s = s.replaceAll("\"", "&quot;");
+      return -1;
+    }
+
+    /** Returns the length of {@code s[start, end)} once it has been escaped. */
+    private static int escapedLength(CharSequence s, int start, int end, String[] escapes) {
+      int length = end - start;
+      for (int i = start; i < end; i++) {
+        String escape = escapeOf(s.charAt(i), escapes);
+        if (escape != null) {
+          length += escape.length() - 1;
+        }
       }
-      if (s.indexOf("'") != -1) {
-        s = s.replaceAll("'", "&#39;");
+      return length;
+    }
+
+    /**
+     * Appends {@code s[start, end)} to {@code sb}, replacing the characters that have a replacement
+     * in {@code escapes}. Runs of characters that need no escaping are copied in bulk.
+     */
+    private static void appendEscaped(
+        CharSequence s, int start, int end, StringBuilder sb, String[] escapes) {
+      int unescaped = start;
+      for (int i = start; i < end; i++) {
+        String escape = escapeOf(s.charAt(i), escapes);
+        if (escape != null) {
+          sb.append(s, unescaped, i).append(escape);
+          unescaped = i + 1;
+        }
       }
-      return s;
+      sb.append(s, unescaped, end);
     }
   }
 }
@@ -15,9 +15,9 @@
  */
 package org.gwtproject.safehtml.shared;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.io.Reader;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
 
 /**
  * A simple and relatively inexpensive HTML sanitizer.
@@ -38,11 +38,8 @@ public final class SimpleHtmlSanitizer implements HtmlSanitizer {
 
   private static final SimpleHtmlSanitizer INSTANCE = new SimpleHtmlSanitizer();
 
-  private static final Set<String> TAG_WHITELIST =
-      new HashSet<String>(
-          Arrays.asList(
-              "b", "em", "i", "h1", "h2", "h3", "h4", "h5", "h6", "hr", "ul", "ol", "li", "strong",
-              "br"));
+  /** The length of the longest whitelisted tag name, {@code strong}. */
+  private static final int MAX_TAG_NAME_LENGTH = 6;
 
   // prevent external instantiation
   private SimpleHtmlSanitizer() {}
@@ -61,6 +58,18 @@ public final class SimpleHtmlSanitizer implements HtmlSanitizer {
     return sanitizeHtml(html);
   }
 
+  /**
+   * HTML-sanitizes the HTML read from a stream, see {@link #sanitizeHtml(Reader, Appendable)}.
+   *
+   * @param html the input to sanitize
+   * @param out the target to append the sanitized HTML to
+   * @throws IOException if {@code html} or {@code out} throws one
+   */
+  @GwtIncompatible
+  public void sanitize(Reader html, Appendable out) throws IOException {
+    sanitizeHtml(html, out);
+  }
+
   /*
    * Note: We purposely do not provide a method to create a SafeHtml from
    * another (arbitrary) SafeHtml via sanitization, as this would permit the
@@ -89,71 +98,146 @@ public final class SimpleHtmlSanitizer implements HtmlSanitizer {
     return new SafeHtmlString(simpleSanitize(html));
   }
 
-  /*
-   * Sanitize a string containing simple HTML markup as defined above. The
-   * approach is as follows: We split the string at each occurence of '<'. Each
-   * segment thus obtained is inspected to determine if the leading '<' was
-   * indeed the start of a whitelisted tag or not. If so, the tag is emitted
-   * unescaped, and the remainder of the segment (which cannot contain any
-   * additional tags) is emitted in escaped form. Otherwise, the entire segment
-   * is emitted in escaped form.
+  /**
+   * HTML-sanitizes the HTML read from a stream, appending the result to an {@link Appendable} as it
+   * goes.
+   *
+   * <p>The input is processed as described above, a window of a few thousand characters at a time,
+   * so sanitizing uses the same memory whatever the length of the input. The result is the same as
+   * that of {@link #sanitizeHtml(String)} on the whole input, and is safe to use in HTML contexts
+   * once all of it has been appended. The only exception are entity references longer than 8192
+   * characters, which are escaped. The reader is read until its end but not closed.
    *
-   * In either case, EscapeUtils.htmlEscapeAllowEntities is used to escape,
-   * which escapes HTML but does not double escape existing syntactially valid
-   * HTML entities.
+   * @param html the input to sanitize
+   * @param out the target to append the sanitized HTML to
+   * @throws IOException if {@code html} or {@code out} throws one
+   */
+  @GwtIncompatible
+  public static void sanitizeHtml(Reader html, Appendable out) throws IOException {
+    StreamSanitizer.sanitize(html, out, SimpleHtmlSanitizer::appendWhitelistedTag);
+  }
+
+  /*
+   * Sanitize a string containing simple HTML markup as defined above. This is
+   * a single forward scan: at each '<', the tag name is matched in place
+   * against the whitelist; whitelisted tags are copied verbatim, as are
+   * syntactically valid HTML entities (which are not double-escaped), and any
+   * other HTML metacharacter is escaped. The unchanged runs between them are
+   * copied in bulk, and only once something needs escaping.
    */
   // TODO(xtof): should this be in a utils class?
   private static String simpleSanitize(String text) {
-    StringBuilder sanitized = new StringBuilder();
-
-    boolean firstSegment = true;
-    for (String segment : text.split("<", -1)) {
-      if (firstSegment) {
-        /*
-         *  the first segment is never part of a valid tag; note that if the
-         *  input string starts with a tag, we will get an empty segment at the
-         *  beginning.
-         */
-        firstSegment = false;
-        sanitized.append(SafeHtmlUtils.htmlEscapeAllowEntities(segment));
-        continue;
+    int length = text.length();
+    StringBuilder sanitized = null;
+    int copied = 0;
+    for (int i = 0; i < length; i++) {
+      String escaped;
+      switch (text.charAt(i)) {
+        case '<':
+          int tagEnd = whitelistedTagEnd(text, i, length);
+          if (tagEnd != -1) {
+            i = tagEnd - 1;
+            continue;
+          }
+          escaped = "&lt;";
+          break;
+        case '&':
+          int entityEnd = SafeHtmlUtils.entityReferenceEnd(text, i, length);
+          if (entityEnd != -1) {
+            i = entityEnd - 1;
+            continue;
+          }
+          escaped = "&amp;";
+          break;
+        case '>':
+          escaped = "&gt;";
+          break;
+        case '"':
+          escaped = "&quot;";
+          break;
+        case '\'':
+          escaped = "&#39;";
+          break;
+        default:
+          continue;
+      }
+      if (sanitized == null) {
+        sanitized = new StringBuilder(length + (length >> 3) + 16);
       }
+      sanitized.append(text, copied, i).append(escaped);
+      copied = i + 1;
+    }
+    if (sanitized == null) {
+      // Nothing was escaped.
+      return text;
+    }
+    return sanitized.append(text, copied, length).toString();
+  }
 
-      /*
-       *  determine if the current segment is the start of an attribute-free tag
-       *  or end-tag in our whitelist
-       */
-      int tagStart = 0; // will be 1 if this turns out to be an end tag.
-      int tagEnd = segment.indexOf('>');
-      String tag = null;
-      boolean isValidTag = false;
-      if (tagEnd > 0) {
-        if (segment.charAt(0) == '/') {
-          tagStart = 1;
-        }
-        tag = segment.substring(tagStart, tagEnd);
-        if (TAG_WHITELIST.contains(tag)) {
-          isValidTag = true;
-        }
+  /**
+   * Returns the index after the whitelisted start or end tag starting with the {@code '<'} at
+   * {@code lt}, or -1 if there is no such tag before {@code end}.
+   */
+  private static int whitelistedTagEnd(CharSequence text, int lt, int end) {
+    int nameStart = lt + 1;
+    if (nameStart < end && text.charAt(nameStart) == '/') {
+      nameStart++;
+    }
+    // Only look as far as the longest name can go, so that a run of '<' stays linear.
+    int limit = Math.min(end, nameStart + MAX_TAG_NAME_LENGTH + 1);
+    for (int i = nameStart; i < limit; i++) {
+      if (text.charAt(i) == '>') {
+        return isWhitelistedTag(text, nameStart, i) ? i + 1 : -1;
       }
+    }
+    return -1;
+  }
 
-      if (isValidTag) {
-        // append the tag, not escaping it
-        if (tagStart == 0) {
-          sanitized.append('<');
-        } else {
-          // we had seen an end-tag
-          sanitized.append("</");
-        }
-        sanitized.append(tag).append('>');
+  /**
+   * Appends the whitelisted tag starting with the {@code '<'} at {@code lt} to {@code out} and
+   * returns the index after it, or returns -1 if there is no such tag before {@code end}.
+   */
+  @GwtIncompatible
+  private static int appendWhitelistedTag(CharSequence text, int lt, int end, StringBuilder out) {
+    int tagEnd = whitelistedTagEnd(text, lt, end);
+    if (tagEnd != -1) {
+      out.append(text, lt, tagEnd);
+    }
+    return tagEnd;
+  }
 
-        // append the rest of the segment, escaping it
-        sanitized.append(SafeHtmlUtils.htmlEscapeAllowEntities(segment.substring(tagEnd + 1)));
-      } else {
-        // just escape the whole segment
-        sanitized.append("&lt;").append(SafeHtmlUtils.htmlEscapeAllowEntities(segment));
-      }
+  /** Returns whether {@code text[start, end)} is the name of a whitelisted tag. */
+  private static boolean isWhitelistedTag(CharSequence text, int start, int end) {
+    switch (end - start) {
+      case 1:
+        char c = text.charAt(start);
+        return c == 'b' || c == 'i';
+      case 2:
+        char c1 = text.charAt(start + 1);
+        switch (text.charAt(start)) {
+          case 'b':
+            return c1 == 'r';
+          case 'e':
+            return c1 == 'm';
+          case 'h':
+            return (c1 >= '1' && c1 <= '6') || c1 == 'r';
+          case 'l':
+            return c1 == 'i';
+          case 'o':
+          case 'u':
+            return c1 == 'l';
+          default:
+            return false;
+        }
+      case 6:
+        for (int i = 0; i < 6; i++) {
+          if (text.charAt(start + i) != "strong".charAt(i)) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        return false;
     }
-    return sanitized.toString();
   }
 }
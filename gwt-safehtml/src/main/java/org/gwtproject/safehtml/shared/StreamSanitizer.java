@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import java.io.Reader;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * Sanitizes HTML read from a {@link Reader} a window at a time, for the streaming methods of {@link
+ * SimpleHtmlSanitizer} and {@link HtmlSanitizerPolicy}.
+ *
+ * <p>Text is escaped as in {@link SafeHtmlUtils#htmlEscapeAllowEntities(String)}, and tags are
+ * handled by the sanitizer. A tag or entity reference that runs into the end of the window is kept
+ * for the next window, so the result does not depend on how the input is split into reads, except
+ * that tags and entity references longer than {@link #MAX_TOKEN_LENGTH} are escaped as text. The
+ * window and the output buffer have a fixed size, so sanitizing uses the same memory whatever the
+ * length of the input.
+ *
+ * <p>This class is package-private and intended for internal use by the {@link
+ * org.gwtproject.safehtml} package.
+ */
+@GwtIncompatible
+final class StreamSanitizer {
+
+  /** The markup handling of a sanitizer. */
+  interface TagSanitizer {
+
+    /**
+     * Appends the sanitized form of the tag starting with the {@code '<'} at {@code lt} to {@code
+     * out}, and returns the index after the tag. Returns -1 without appending anything if there is
+     * no tag to keep before {@code end}. Characters at or after {@code end} must not be read.
+     */
+    int appendTag(CharSequence html, int lt, int end, StringBuilder out);
+  }
+
+  /** The number of characters read at a time. */
+  static final int READ_LENGTH = 8192;
+
+  /**
+   * The length from which a tag or entity reference that is still incomplete at the end of the
+   * window is escaped as text rather than kept for the next one.
+   */
+  static final int MAX_TOKEN_LENGTH = 8192;
+
+  // prevent instantiation
+  private StreamSanitizer() {}
+
+  /**
+   * Sanitizes the HTML read from {@code in} until its end, appending the result to {@code out} a
+   * window at a time. The reader is not closed.
+   */
+  static void sanitize(Reader in, Appendable out, TagSanitizer tags) throws IOException {
+    Window window = new Window(READ_LENGTH + MAX_TOKEN_LENGTH);
+    StringBuilder sanitized = new StringBuilder(2 * READ_LENGTH);
+    int start = 0;
+    boolean endOfInput = false;
+    while (!endOfInput) {
+      window.compact(start);
+      endOfInput = window.fill(in);
+      start = sanitize(window, endOfInput, tags, sanitized);
+      out.append(sanitized);
+      sanitized.setLength(0);
+    }
+  }
+
+  /**
+   * Sanitizes the window into {@code out}, and returns the index of the first character that has
+   * not been sanitized, because it starts a tag or entity reference that may continue after the
+   * window. At the end of the input, the whole window is sanitized.
+   */
+  private static int sanitize(
+      Window window, boolean endOfInput, TagSanitizer tags, StringBuilder out) {
+    int end = window.length();
+    int textStart = 0;
+    for (int i = 0; i < end; i++) {
+      char c = window.charAt(i);
+      if (c != '<' && c != '&') {
+        continue;
+      }
+      SafeHtmlUtils.htmlEscapeTo(window, textStart, i, out);
+      window.lastRead = i;
+      int tokenEnd =
+          c == '<'
+              ? tags.appendTag(window, i, end, out)
+              : SafeHtmlUtils.entityReferenceEnd(window, i, end);
+      if (tokenEnd == -1) {
+        if (!endOfInput && window.lastRead >= end - 1 && end - i < MAX_TOKEN_LENGTH) {
+          // The tag or entity reference may be complete once more input is read.
+          return i;
+        }
+        out.append(c == '<' ? "&lt;" : "&amp;");
+        textStart = i + 1;
+      } else {
+        if (c == '&') {
+          out.append(window, i, tokenEnd);
+        }
+        textStart = tokenEnd;
+        i = tokenEnd - 1;
+      }
+    }
+    SafeHtmlUtils.htmlEscapeTo(window, textStart, end, out);
+    return end;
+  }
+
+  /**
+   * A fixed-size buffer of input, which keeps track of the furthest character read since {@link
+   * #lastRead} was last set, to tell whether a token was rejected because the window ended.
+   */
+  private static final class Window implements CharSequence {
+
+    private final char[] chars;
+    private int length;
+    int lastRead;
+
+    Window(int capacity) {
+      chars = new char[capacity];
+    }
+
+    /** Drops the characters before {@code start}. */
+    void compact(int start) {
+      System.arraycopy(chars, start, chars, 0, length - start);
+      length -= start;
+    }
+
+    /** Reads until the window is full or the input ends, and returns whether it has ended. */
+    boolean fill(Reader in) throws IOException {
+      while (length < chars.length) {
+        int read = in.read(chars, length, chars.length - length);
+        if (read == -1) {
+          return true;
+        }
+        length += read;
+      }
+      return false;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index > lastRead) {
+        lastRead = index;
+      }
+      return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, 0, length);
+    }
+  }
+}
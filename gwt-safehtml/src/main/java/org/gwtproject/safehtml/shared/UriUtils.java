@@ -16,7 +16,8 @@
 package org.gwtproject.safehtml.shared;
 
 import elemental2.core.Global;
-import java.io.UnsupportedEncodingException;
+import elemental2.core.JsRegExp;
+import elemental2.core.JsString;
 import java.util.Locale;
 import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
 import org.gwtproject.safehtml.shared.annotations.IsSafeUri;
@@ -130,34 +131,40 @@ public final class UriUtils {
    * @return the %-escaped URL
    */
   public static String encodeAllowEscapes(String uri) {
-    StringBuilder escaped = new StringBuilder();
+    StringBuilder escaped = new StringBuilder(uri.length());
+    encodeAllowEscapesTo(uri, escaped);
+    return escaped.toString();
+  }
 
-    boolean firstSegment = true;
-    for (String segment : uri.split("%", -1)) {
-      if (firstSegment) {
-        /*
-         * The first segment is never part of a percent-escape, so we always
-         * escape it. Note that if the input starts with a percent, we will get
-         * an empty segment before that.
-         */
-        firstSegment = false;
-        escaped.append(encode(segment));
+  /**
+   * Encodes the URL directly into a {@link StringBuilder}, preserving existing %-escapes.
+   *
+   * @param uri the URL to encode
+   * @param sb the builder to append the %-escaped URL to
+   * @see #encodeAllowEscapes(String)
+   */
+  public static void encodeAllowEscapesTo(CharSequence uri, StringBuilder sb) {
+    int length = uri.length();
+    int unencoded = 0;
+    for (int i = 0; i < length; i++) {
+      if (uri.charAt(i) != '%') {
         continue;
       }
-
-      if (segment.length() >= 2 && segment.substring(0, 2).matches("[0-9a-fA-F]{2}")) {
+      // Encode everything since the last escape, which cannot contain a '%'.
+      impl.encodeTo(uri, unencoded, i, sb);
+      if (i + 2 < length
+          && SafeHtmlUtils.isHexDigit(uri.charAt(i + 1))
+          && SafeHtmlUtils.isHexDigit(uri.charAt(i + 2))) {
         // Append the escape without encoding.
-        escaped.append("%").append(segment.substring(0, 2));
-
-        // Append the rest of the segment, escaped.
-        escaped.append(encode(segment.substring(2)));
+        sb.append(uri, i, i + 3);
+        i += 2;
       } else {
-        // The segment did not start with an escape, so encode the whole
-        // segment.
-        escaped.append("%25").append(encode(segment));
+        // The '%' did not start an escape, so encode it.
+        sb.append("%25");
       }
+      unencoded = i + 1;
     }
-    return escaped.toString();
+    impl.encodeTo(uri, unencoded, length, sb);
   }
 
   /**
@@ -199,6 +206,52 @@ public final class UriUtils {
     return impl.encode(uri);
   }
 
+  /**
+   * Encodes the URL directly into a {@link StringBuilder}.
+   *
+   * @param uri the URL to encode
+   * @param sb the builder to append the %-escaped URL to
+   * @see #encode(String)
+   */
+  public static void encodeTo(CharSequence uri, StringBuilder sb) {
+    impl.encodeTo(uri, 0, uri.length(), sb);
+  }
+
+  /**
+   * Encodes a range of a character sequence as a URL, without copying the range first.
+   *
+   * @param uri the character sequence containing the URL to encode
+   * @param start the index of the first character to be encoded
+   * @param end the index after the last character to be encoded
+   * @return the %-escaped URL
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code uri.length()}
+   * @see #encode(String)
+   */
+  public static String encode(CharSequence uri, int start, int end) {
+    SafeHtmlUtils.checkRange(uri, start, end);
+    StringBuilder sb = new StringBuilder(end - start);
+    impl.encodeTo(uri, start, end, sb);
+    return sb.toString();
+  }
+
+  /**
+   * Encodes a range of a character sequence as a URL directly into a {@link StringBuilder},
+   * without copying the range first.
+   *
+   * @param uri the character sequence containing the URL to encode
+   * @param start the index of the first character to be encoded
+   * @param end the index after the last character to be encoded
+   * @param sb the builder to append the %-escaped URL to
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code uri.length()}
+   * @see #encode(String)
+   */
+  public static void encodeTo(CharSequence uri, int start, int end, StringBuilder sb) {
+    SafeHtmlUtils.checkRange(uri, start, end);
+    impl.encodeTo(uri, start, end, sb);
+  }
+
   /**
    * Returns a {@link SafeUri} constructed from a trusted string, i.e., without sanitizing the
    * string. No checks are performed. The calling code should be carefully reviewed to ensure the
@@ -233,50 +286,83 @@ public final class UriUtils {
 
   private static class JsImpl {
 
+    private static final JsRegExp ESCAPED_LEFT_BRACKET_RE = new JsRegExp("%5B", "g");
+    private static final JsRegExp ESCAPED_RIGHT_BRACKET_RE = new JsRegExp("%5D", "g");
+
     String encode(String uri) {
       uri = Global.encodeURI(uri);
-      // Follow the same approach as SafeHtmlUtils.htmlEscape
+      // Global.encodeURI escapes square brackets, which are allowed in URIs. Unescape them with
+      // native replaces, rather than String.replaceAll which needs java.util.regex emulation.
       if (uri.indexOf("%5B") != -1) {
-        uri = uri.replaceAll("%5B", "[");
+        uri = new JsString(uri).replace(ESCAPED_LEFT_BRACKET_RE, "[");
       }
       if (uri.indexOf("%5D") != -1) {
-        uri = uri.replaceAll("%5D", "]");
+        uri = new JsString(uri).replace(ESCAPED_RIGHT_BRACKET_RE, "]");
       }
       return uri;
     }
+
+    void encodeTo(CharSequence uri, int start, int end, StringBuilder sb) {
+      if (start < end) {
+        sb.append(encode(uri.subSequence(start, end).toString()));
+      }
+    }
   }
 
   private static class JvmImpl extends JsImpl {
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     @GwtIncompatible
     @Override
     String encode(String uri) {
-      StringBuilder sb = new StringBuilder();
-      byte[] utf8bytes;
-      try {
-        utf8bytes = uri.getBytes("UTF-8");
-      } catch (UnsupportedEncodingException e) {
-        // UTF-8 is guaranteed to be implemented, this code won't ever run.
-        return null;
-      }
-      for (byte b : utf8bytes) {
-        int c = b & 0xFF;
-        // This works because characters that don't need encoding are all
-        // expressed as a single UTF-8 byte
-        if (('a' <= c && c <= 'z')
-            || ('A' <= c && c <= 'Z')
-            || ('0' <= c && c <= '9')
-            || DONT_NEED_ENCODING.indexOf(c) != -1) {
-          sb.append((char) c);
-        } else {
-          String hexByte = Integer.toHexString(c).toUpperCase(Locale.ROOT);
-          if (hexByte.length() == 1) {
-            hexByte = "0" + hexByte;
+      StringBuilder sb = new StringBuilder(uri.length());
+      encodeTo(uri, 0, uri.length(), sb);
+      return sb.toString();
+    }
+
+    @GwtIncompatible
+    @Override
+    void encodeTo(CharSequence uri, int start, int end, StringBuilder sb) {
+      sb.ensureCapacity(sb.length() + end - start);
+      for (int i = start; i < end; i++) {
+        char c = uri.charAt(i);
+        if (c < 0x80) {
+          // This works because characters that don't need encoding are all
+          // expressed as a single UTF-8 byte
+          if (('a' <= c && c <= 'z')
+              || ('A' <= c && c <= 'Z')
+              || ('0' <= c && c <= '9')
+              || DONT_NEED_ENCODING.indexOf(c) != -1) {
+            sb.append(c);
+          } else {
+            appendEscapedByte(c, sb);
           }
-          sb.append('%').append(hexByte);
+        } else if (c < 0x800) {
+          appendEscapedByte(0xC0 | (c >> 6), sb);
+          appendEscapedByte(0x80 | (c & 0x3F), sb);
+        } else if (!Character.isSurrogate(c)) {
+          appendEscapedByte(0xE0 | (c >> 12), sb);
+          appendEscapedByte(0x80 | ((c >> 6) & 0x3F), sb);
+          appendEscapedByte(0x80 | (c & 0x3F), sb);
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < end
+            && Character.isLowSurrogate(uri.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, uri.charAt(++i));
+          appendEscapedByte(0xF0 | (codePoint >> 18), sb);
+          appendEscapedByte(0x80 | ((codePoint >> 12) & 0x3F), sb);
+          appendEscapedByte(0x80 | ((codePoint >> 6) & 0x3F), sb);
+          appendEscapedByte(0x80 | (codePoint & 0x3F), sb);
+        } else {
+          // Unpaired surrogates can't be encoded as UTF-8; String.getBytes("UTF-8") replaces them
+          // with '?', which doesn't need %-escaping.
+          sb.append('?');
         }
       }
-      return sb.toString();
+    }
+
+    private static void appendEscapedByte(int b, StringBuilder sb) {
+      sb.append('%').append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0xF]);
     }
   }
 }
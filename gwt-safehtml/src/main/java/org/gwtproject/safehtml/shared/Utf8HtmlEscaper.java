@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * HTML-escapes UTF-8 encoded text without decoding it, in the same way as {@link
+ * SafeHtmlUtils#htmlEscape(String)} escapes the decoded text.
+ *
+ * <p>All HTML meta-characters are single-byte ASCII characters, and no byte of a multi-byte UTF-8
+ * sequence falls in the ASCII range, so every byte that isn't a meta-character is copied through
+ * unchanged, in bulk. The input is not validated: malformed UTF-8 is copied through as well.
+ *
+ * <p>Like {@link java.nio.charset.CharsetEncoder#encode(java.nio.CharBuffer, ByteBuffer, boolean)},
+ * {@link #htmlEscape(ByteBuffer, ByteBuffer)} consumes as much input as fits into the output buffer
+ * and can be resumed after the output buffer has been drained. A {@code byte[]} can be escaped by
+ * wrapping it with {@link ByteBuffer#wrap(byte[], int, int)}, which doesn't copy it.
+ */
+@GwtIncompatible
+public final class Utf8HtmlEscaper {
+
+  /**
+   * The length in bytes of the longest entity reference written by this escaper. An output buffer
+   * must have at least this much space for {@link #htmlEscape(ByteBuffer, ByteBuffer)} to be
+   * guaranteed to make progress.
+   */
+  public static final int MAX_ESCAPE_LENGTH = "&quot;".length();
+
+  /**
+   * UTF-8 encoded replacements for the HTML meta-characters, indexed by byte; {@code null} for
+   * bytes that don't need escaping.
+   */
+  private static final byte[][] HTML_ESCAPES = new byte['>' + 1][];
+
+  static {
+    for (char c = 0; c < HTML_ESCAPES.length; c++) {
+      String escape = SafeHtmlUtils.JvmImpl.escapeOf(c);
+      if (escape != null) {
+        HTML_ESCAPES[c] = escape.getBytes(StandardCharsets.US_ASCII);
+      }
+    }
+  }
+
+  // prevent instantiation
+  private Utf8HtmlEscaper() {}
+
+  /**
+   * HTML-escapes the remaining bytes of {@code in} into {@code out}.
+   *
+   * <p>Bytes are read from {@code in} starting at its position, and written to {@code out}
+   * starting at its position. The positions of both buffers are advanced past the bytes read and
+   * written. An entity reference is either written completely or not at all, so the input can
+   * always be resumed at its new position.
+   *
+   * @param in the UTF-8 encoded text to escape
+   * @param out the buffer to write the escaped UTF-8 text to
+   * @return {@link CoderResult#UNDERFLOW} if all of {@code in} has been consumed, or {@link
+   *     CoderResult#OVERFLOW} if {@code out} has insufficient space for the remaining input
+   */
+  public static CoderResult htmlEscape(ByteBuffer in, ByteBuffer out) {
+    if (in.hasArray() && out.hasArray()) {
+      return htmlEscapeArrays(in, out);
+    }
+    return htmlEscapeBuffers(in, out);
+  }
+
+  private static byte[] escapeOf(byte b) {
+    return b >= 0 && b < HTML_ESCAPES.length ? HTML_ESCAPES[b] : null;
+  }
+
+  private static CoderResult htmlEscapeArrays(ByteBuffer in, ByteBuffer out) {
+    byte[] src = in.array();
+    int sp = in.arrayOffset() + in.position();
+    int sl = in.arrayOffset() + in.limit();
+    byte[] dst = out.array();
+    int dp = out.arrayOffset() + out.position();
+    int dl = out.arrayOffset() + out.limit();
+    try {
+      while (sp < sl) {
+        // Copy the longest run of unescaped bytes that fits into the output.
+        int runEnd = sp;
+        int runLimit = Math.min(sl, sp + dl - dp);
+        while (runEnd < runLimit && escapeOf(src[runEnd]) == null) {
+          runEnd++;
+        }
+        System.arraycopy(src, sp, dst, dp, runEnd - sp);
+        dp += runEnd - sp;
+        sp = runEnd;
+        if (sp == sl) {
+          break;
+        }
+
+        byte[] escape = escapeOf(src[sp]);
+        if (escape == null || dl - dp < escape.length) {
+          return CoderResult.OVERFLOW;
+        }
+        System.arraycopy(escape, 0, dst, dp, escape.length);
+        dp += escape.length;
+        sp++;
+      }
+      return CoderResult.UNDERFLOW;
+    } finally {
+      in.position(sp - in.arrayOffset());
+      out.position(dp - out.arrayOffset());
+    }
+  }
+
+  private static CoderResult htmlEscapeBuffers(ByteBuffer in, ByteBuffer out) {
+    int sp = in.position();
+    int sl = in.limit();
+    try {
+      while (sp < sl) {
+        int runEnd = sp;
+        int runLimit = Math.min(sl, sp + out.remaining());
+        while (runEnd < runLimit && escapeOf(in.get(runEnd)) == null) {
+          runEnd++;
+        }
+        if (runEnd > sp) {
+          ByteBuffer run = in.duplicate();
+          run.position(sp).limit(runEnd);
+          out.put(run);
+          sp = runEnd;
+        }
+        if (sp == sl) {
+          break;
+        }
+
+        byte[] escape = escapeOf(in.get(sp));
+        if (escape == null || out.remaining() < escape.length) {
+          return CoderResult.OVERFLOW;
+        }
+        out.put(escape);
+        sp++;
+      }
+      return CoderResult.UNDERFLOW;
+    } finally {
+      in.position(sp);
+    }
+  }
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.gwtproject.safehtml.shared.annotations.GwtIncompatible;
+
+/**
+ * A builder that builds up XSS-safe HTML like {@link SafeHtmlBuilder}, but accumulates it as UTF-8
+ * encoded bytes, for writing it straight to a socket or a servlet response.
+ *
+ * <p>Text is HTML-escaped and encoded in a single pass, into a chain of {@link ByteBuffer}s taken
+ * from a {@link ByteBufferPool}, so there is neither a char buffer to grow nor a final string to
+ * encode again. The accumulated bytes are written out with {@link #drainTo(WritableByteChannel)},
+ * which uses a single gathering write where the channel supports it, or with {@link
+ * #drainTo(OutputStream)}. Draining hands the buffers back to the pool, and leaves the builder
+ * empty and ready to be reused.
+ *
+ * <pre class="code">
+ * try (Utf8SafeHtmlBuilder html = new Utf8SafeHtmlBuilder(POOL)) {
+ *   html.appendHtmlConstant("&lt;p&gt;").appendEscaped(comment).appendHtmlConstant("&lt;/p&gt;");
+ *   html.drainTo(response.getOutputStream());
+ * }</pre>
+ *
+ * <p>The appending methods have the same contract as those of {@link SafeHtmlBuilder}; in
+ * particular, see {@link SafeHtmlBuilder#appendHtmlConstant(String)} for the constraints its
+ * argument must satisfy. Unpaired surrogates are encoded as {@code '?'}, like {@link
+ * String#getBytes(java.nio.charset.Charset)} does. A surrogate pair may be split across two
+ * appends.
+ *
+ * <p>Buffers must be handed back to the pool by draining or {@link #close() closing} the builder.
+ *
+ * <p>This class is not thread-safe.
+ */
+@GwtIncompatible
+public final class Utf8SafeHtmlBuilder implements Closeable {
+
+  /** The size of the buffers of builders that don't share a pool. */
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /** The most bytes written for a single char, or a pair of surrogates. */
+  private static final int MAX_BYTES_PER_CHAR = Math.max(4, Utf8HtmlEscaper.MAX_ESCAPE_LENGTH);
+
+  private final ByteBufferPool pool;
+  private final List<ByteBuffer> buffers = new ArrayList<>();
+  private final Appendable unescaped = new UnescapedAppendable();
+
+  /** The buffer being written to, which is the last one of {@link #buffers}, if any. */
+  private ByteBuffer current;
+
+  /** The number of bytes in the buffers before {@link #current}. */
+  private long filledBytes;
+
+  /** A high surrogate waiting for its low surrogate, or {@code 0}. */
+  private char highSurrogate;
+
+  /** Constructs an empty builder that does not share its buffers with other builders. */
+  public Utf8SafeHtmlBuilder() {
+    this(new ByteBufferPool(1, DEFAULT_BUFFER_SIZE, false));
+  }
+
+  /**
+   * Constructs an empty builder taking its buffers from {@code pool}.
+   *
+   * @param pool the pool to take buffers from and hand them back to
+   */
+  public Utf8SafeHtmlBuilder(ByteBufferPool pool) {
+    if (pool == null) {
+      throw new NullPointerException("pool is null");
+    }
+    this.pool = pool;
+  }
+
+  /**
+   * Appends the string representation of a boolean.
+   *
+   * @param b the boolean whose string representation to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(boolean b) {
+    writeAscii(String.valueOf(b));
+    return this;
+  }
+
+  /**
+   * Appends the string representation of a number.
+   *
+   * @param num the number whose string representation to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(byte num) {
+    writeAscii(String.valueOf(num));
+    return this;
+  }
+
+  /**
+   * Appends the string representation of a char, after HTML-escaping it.
+   *
+   * @param c the character whose string representation to append
+   * @return a reference to this object
+   * @see SafeHtmlUtils#htmlEscape(char)
+   */
+  public Utf8SafeHtmlBuilder append(char c) {
+    writeChar(c, true);
+    return this;
+  }
+
+  /**
+   * Appends the string representation of a number.
+   *
+   * @param num the number whose string representation to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(double num) {
+    writeAscii(String.valueOf(num));
+    return this;
+  }
+
+  /**
+   * Appends the string representation of a number.
+   *
+   * @param num the number whose string representation to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(float num) {
+    writeAscii(String.valueOf(num));
+    return this;
+  }
+
+  /**
+   * Appends the string representation of a number.
+   *
+   * @param num the number whose string representation to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(int num) {
+    writeAscii(String.valueOf(num));
+    return this;
+  }
+
+  /**
+   * Appends the string representation of a number.
+   *
+   * @param num the number whose string representation to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(long num) {
+    writeAscii(String.valueOf(num));
+    return this;
+  }
+
+  /**
+   * Appends the contents of a {@link SafeHtml} object, without applying HTML-escaping to it.
+   *
+   * <p>If {@link SafeHtmlUtils#utf8Of(SafeHtml)} has kept the UTF-8 encoding of {@code html}, it
+   * is copied as is, without encoding {@code html} again.
+   *
+   * @param html the {@link SafeHtml} to append
+   * @return a reference to this object
+   */
+  public Utf8SafeHtmlBuilder append(SafeHtml html) {
+    if (highSurrogate == 0) {
+      byte[] utf8 = SafeHtmlUtils.cachedUtf8Of(html);
+      if (utf8 != null) {
+        writeBytes(utf8);
+        return this;
+      }
+    }
+    if (html instanceof SafeHtmlText) {
+      // Escape the text straight into the buffers, unless it has been escaped already.
+      String text = ((SafeHtmlText) html).text();
+      if (text != null) {
+        writeChars(text, 0, text.length(), true);
+        return this;
+      }
+    }
+    if (html instanceof AppendableSafeHtml) {
+      try {
+        ((AppendableSafeHtml) html).appendTo(unescaped);
+      } catch (IOException e) {
+        // UnescapedAppendable never throws IOException.
+        throw new AssertionError(e);
+      }
+    } else {
+      String s = html.asString();
+      writeChars(s, 0, s.length(), false);
+    }
+    return this;
+  }
+
+  /**
+   * Appends a string after HTML-escaping it.
+   *
+   * @param text the string to append
+   * @return a reference to this object
+   * @see SafeHtmlUtils#htmlEscape(String)
+   */
+  public Utf8SafeHtmlBuilder appendEscaped(String text) {
+    writeChars(text, 0, text.length(), true);
+    return this;
+  }
+
+  /**
+   * Appends a range of a character sequence after HTML-escaping it, without copying the range
+   * first.
+   *
+   * @param text the character sequence containing the range to append
+   * @param start the index of the first character to append
+   * @param end the index after the last character to append
+   * @return a reference to this object
+   * @throws IndexOutOfBoundsException if {@code start} or {@code end} are negative, if {@code
+   *     start} is greater than {@code end}, or if {@code end} is greater than {@code text.length()}
+   * @see SafeHtmlUtils#htmlEscape(CharSequence, int, int)
+   */
+  public Utf8SafeHtmlBuilder appendEscaped(CharSequence text, int start, int end) {
+    SafeHtmlUtils.checkRange(text, start, end);
+    writeChars(text, start, end, true);
+    return this;
+  }
+
+  /**
+   * Appends a string consisting of several lines after HTML-escaping it. Line terminators in the
+   * original string ({@code \n}, {@code \r\n} or {@code \r}) are converted to {@code <br>} tags.
+   *
+   * @param text the string to append
+   * @return a reference to this object
+   * @see SafeHtmlBuilder#appendEscapedLines(String)
+   */
+  public Utf8SafeHtmlBuilder appendEscapedLines(String text) {
+    int length = text.length();
+    int lineStart = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r') {
+        writeChars(text, lineStart, i, true);
+        writeAscii("<br>");
+        if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+          i++;
+        }
+        lineStart = i + 1;
+      }
+    }
+    writeChars(text, lineStart, length, true);
+    return this;
+  }
+
+  /**
+   * Appends a compile-time-constant string, which will <em>not</em> be escaped.
+   *
+   * @param html the HTML snippet to be appended
+   * @return a reference to this object
+   * @throws IllegalArgumentException if not running in prod mode and {@code html} violates the
+   *     constraints of {@link SafeHtmlBuilder#appendHtmlConstant(String)}
+   */
+  public Utf8SafeHtmlBuilder appendHtmlConstant(String html) {
+    SafeHtmlHostedModeUtils.maybeCheckCompleteHtml(html);
+    writeChars(html, 0, html.length(), false);
+    return this;
+  }
+
+  /** Returns the number of bytes accumulated in the builder. */
+  public long size() {
+    return filledBytes + (current == null ? 0 : current.position()) + (highSurrogate != 0 ? 1 : 0);
+  }
+
+  /**
+   * Returns a copy of the bytes accumulated in the builder. The builder is left unchanged.
+   *
+   * @return the UTF-8 encoded HTML
+   * @throws OutOfMemoryError if the builder holds more than {@link Integer#MAX_VALUE} bytes
+   */
+  public byte[] toByteArray() {
+    long size = size();
+    if (size > Integer.MAX_VALUE) {
+      throw new OutOfMemoryError("Too many bytes for an array: " + size);
+    }
+    byte[] bytes = new byte[(int) size];
+    int offset = 0;
+    for (ByteBuffer buffer : buffers) {
+      ByteBuffer filled = buffer.duplicate();
+      filled.flip();
+      int length = filled.remaining();
+      filled.get(bytes, offset, length);
+      offset += length;
+    }
+    if (highSurrogate != 0) {
+      bytes[offset] = '?';
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes the accumulated bytes to {@code channel}, hands the buffers back to the pool and empties
+   * the builder. If the channel is a {@link GatheringByteChannel}, all buffers are written with as
+   * few calls as the channel allows.
+   *
+   * <p>The channel must be in blocking mode. If writing fails, the builder is emptied anyway.
+   *
+   * @param channel the channel to write to
+   * @throws IOException if writing to the channel fails
+   */
+  public void drainTo(WritableByteChannel channel) throws IOException {
+    try {
+      ByteBuffer[] toWrite = flipBuffers();
+      if (channel instanceof GatheringByteChannel) {
+        GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+        int offset = 0;
+        while (offset < toWrite.length) {
+          gatheringChannel.write(toWrite, offset, toWrite.length - offset);
+          while (offset < toWrite.length && !toWrite[offset].hasRemaining()) {
+            offset++;
+          }
+        }
+      } else {
+        for (ByteBuffer buffer : toWrite) {
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+      }
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Writes the accumulated bytes to {@code out}, hands the buffers back to the pool and empties the
+   * builder. Heap buffers are written straight from their backing arrays.
+   *
+   * <p>If writing fails, the builder is emptied anyway. The stream is neither flushed nor closed.
+   *
+   * @param out the stream to write to
+   * @throws IOException if writing to the stream fails
+   */
+  public void drainTo(OutputStream out) throws IOException {
+    try {
+      WritableByteChannel channel = null;
+      for (ByteBuffer buffer : flipBuffers()) {
+        if (buffer.hasArray()) {
+          out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+          if (channel == null) {
+            channel = Channels.newChannel(out);
+          }
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+      }
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Discards the accumulated bytes and hands the buffers back to the pool. The builder can still
+   * be used afterwards.
+   */
+  @Override
+  public void close() {
+    for (ByteBuffer buffer : buffers) {
+      pool.release(buffer);
+    }
+    buffers.clear();
+    current = null;
+    filledBytes = 0;
+    highSurrogate = 0;
+  }
+
+  /** Ends a pending surrogate pair, and flips the buffers for reading. */
+  private ByteBuffer[] flipBuffers() {
+    endSurrogatePair();
+    ByteBuffer[] flipped = buffers.toArray(new ByteBuffer[0]);
+    for (ByteBuffer buffer : flipped) {
+      buffer.flip();
+    }
+    current = null;
+    return flipped;
+  }
+
+  /** Writes a string that only contains ASCII characters that need no escaping. */
+  private void writeAscii(String s) {
+    endSurrogatePair();
+    int length = s.length();
+    for (int i = 0; i < length; ) {
+      ByteBuffer buffer = room(1);
+      int end = Math.min(length, i + buffer.remaining());
+      for (; i < end; i++) {
+        buffer.put((byte) s.charAt(i));
+      }
+    }
+  }
+
+  /** Writes bytes that are already encoded. */
+  private void writeBytes(byte[] bytes) {
+    for (int offset = 0; offset < bytes.length; ) {
+      ByteBuffer buffer = room(1);
+      int length = Math.min(bytes.length - offset, buffer.remaining());
+      buffer.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  /** Encodes {@code s[start, end)}, HTML-escaping it if {@code escape} is true. */
+  private void writeChars(CharSequence s, int start, int end, boolean escape) {
+    int i = start;
+    while (i < end) {
+      ByteBuffer buffer = room(MAX_BYTES_PER_CHAR);
+      if (highSurrogate == 0) {
+        // Copy the longest run of ASCII characters that fits, without any further checks.
+        int runLimit = Math.min(end, i + buffer.remaining());
+        for (char c; i < runLimit && (c = s.charAt(i)) < 0x80; i++) {
+          if (escape && SafeHtmlUtils.JvmImpl.escapeOf(c) != null) {
+            break;
+          }
+          buffer.put((byte) c);
+        }
+        if (i == end) {
+          break;
+        }
+      }
+      writeChar(s.charAt(i++), escape);
+    }
+  }
+
+  /** Encodes {@code c}, HTML-escaping it if {@code escape} is true. */
+  private void writeChar(char c, boolean escape) {
+    ByteBuffer buffer = room(MAX_BYTES_PER_CHAR);
+    if (highSurrogate != 0) {
+      char high = highSurrogate;
+      highSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        int codePoint = Character.toCodePoint(high, c);
+        buffer.put((byte) (0xF0 | (codePoint >> 18)));
+        buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        return;
+      }
+      buffer.put((byte) '?');
+      buffer = room(MAX_BYTES_PER_CHAR);
+    }
+    if (c < 0x80) {
+      String escaped = escape ? SafeHtmlUtils.JvmImpl.escapeOf(c) : null;
+      if (escaped == null) {
+        buffer.put((byte) c);
+      } else {
+        for (int i = 0; i < escaped.length(); i++) {
+          buffer.put((byte) escaped.charAt(i));
+        }
+      }
+    } else if (c < 0x800) {
+      buffer.put((byte) (0xC0 | (c >> 6)));
+      buffer.put((byte) (0x80 | (c & 0x3F)));
+    } else if (Character.isHighSurrogate(c)) {
+      highSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      buffer.put((byte) '?');
+    } else {
+      buffer.put((byte) (0xE0 | (c >> 12)));
+      buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+      buffer.put((byte) (0x80 | (c & 0x3F)));
+    }
+  }
+
+  /** Encodes a high surrogate that was not followed by a low surrogate. */
+  private void endSurrogatePair() {
+    if (highSurrogate != 0) {
+      highSurrogate = 0;
+      room(1).put((byte) '?');
+    }
+  }
+
+  /** Returns the current buffer, after moving on to a new one if it has less than {@code bytes}. */
+  private ByteBuffer room(int bytes) {
+    if (current == null || current.remaining() < bytes) {
+      if (current != null) {
+        filledBytes += current.position();
+      }
+      current = pool.acquire();
+      buffers.add(current);
+    }
+    return current;
+  }
+
+  /** Appends to the builder without escaping, for copying {@link AppendableSafeHtml}s. */
+  private final class UnescapedAppendable implements Appendable {
+
+    @Override
+    public Appendable append(CharSequence csq) {
+      writeChars(csq, 0, csq.length(), false);
+      return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+      SafeHtmlUtils.checkRange(csq, start, end);
+      writeChars(csq, start, end, false);
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) {
+      writeChar(c, false);
+      return this;
+    }
+  }
+}
@@ -28,13 +28,27 @@ public class SafeHtmlJreSuite {
   public static Test suite() {
     TestSuite suite = new TestSuite("Test suite for SafeHtml tests that require the JRE");
 
+    suite.addTestSuite(ByteBufferPoolTest.class);
+    suite.addTestSuite(CachingHtmlSanitizerTest.class);
+    suite.addTestSuite(EscapingCacheTest.class);
+    suite.addTestSuite(FingerprintsTest.class);
+    suite.addTestSuite(HtmlEscapingWriterTest.class);
+    suite.addTestSuite(HtmlSanitizerPolicyTest.class);
+    suite.addTestSuite(HtmlSanitizersTest.class);
+    suite.addTestSuite(SafeHtmlBuilderPoolTest.class);
     suite.addTestSuite(SafeHtmlBuilderTest.class);
+    suite.addTestSuite(SafeHtmlCollectorsTest.class);
     suite.addTestSuite(SafeHtmlHostedModeUtilsTest.class);
+    suite.addTestSuite(SafeHtmlRopeTest.class);
     suite.addTestSuite(SafeHtmlStringTest.class);
+    suite.addTestSuite(SafeHtmlTextTest.class);
     suite.addTestSuite(SafeHtmlUtilsTest.class);
     suite.addTestSuite(SafeUriHostedModeUtilsTest.class);
     suite.addTestSuite(SharedUriUtilsTest.class);
     suite.addTestSuite(SimpleHtmlSanitizerTest.class);
+    suite.addTestSuite(StreamSanitizerTest.class);
+    suite.addTestSuite(Utf8HtmlEscaperTest.class);
+    suite.addTestSuite(Utf8SafeHtmlBuilderTest.class);
 
     suite.addTestSuite(ServerUriUtilsTest.class);
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link ByteBufferPool}. */
+public class ByteBufferPoolTest extends TestCase {
+
+  public void testAcquireRelease() {
+    ByteBufferPool pool = new ByteBufferPool(2, 64, false);
+    ByteBuffer buffer = pool.acquire();
+    assertEquals(64, buffer.capacity());
+    assertFalse(buffer.isDirect());
+    buffer.put((byte) 'x');
+    pool.release(buffer);
+    assertEquals(1, pool.size());
+
+    assertSame(buffer, pool.acquire());
+    assertEquals(0, buffer.position());
+    assertEquals(64, buffer.limit());
+    assertEquals(0, pool.size());
+  }
+
+  public void testDirect() {
+    ByteBufferPool pool = new ByteBufferPool(2, 64, true);
+    assertTrue(pool.acquire().isDirect());
+  }
+
+  public void testBounded() {
+    ByteBufferPool pool = new ByteBufferPool(2, 64, false);
+    ByteBuffer a = pool.acquire();
+    ByteBuffer b = pool.acquire();
+    ByteBuffer c = pool.acquire();
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+    assertEquals(2, pool.size());
+  }
+
+  public void testDropsForeignBuffers() {
+    ByteBufferPool pool = new ByteBufferPool(2, 64, false);
+    pool.release(ByteBuffer.allocate(128));
+    pool.release(ByteBuffer.allocateDirect(64));
+    pool.release(ByteBuffer.allocate(64).asReadOnlyBuffer());
+    assertEquals(0, pool.size());
+  }
+
+  public void testInvalidArguments() {
+    try {
+      new ByteBufferPool(0, 64, false);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new ByteBufferPool(2, Utf8HtmlEscaper.MAX_ESCAPE_LENGTH - 1, false);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
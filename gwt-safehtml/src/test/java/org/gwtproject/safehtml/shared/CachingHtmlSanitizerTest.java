@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link CachingHtmlSanitizer}. */
+public class CachingHtmlSanitizerTest extends TestCase {
+
+  private static final String SIGNATURE = "--<br><b>The Team</b> & <script>friends</script>";
+
+  public void testSanitize_sameAsSanitizer() {
+    CachingHtmlSanitizer sanitizer =
+        new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), 1 << 20);
+    for (String html : new String[] {SIGNATURE, "", "plain", "<em>x</em> &amp; <"}) {
+      assertEquals(SimpleHtmlSanitizer.sanitizeHtml(html), sanitizer.sanitize(html));
+      assertEquals(SimpleHtmlSanitizer.sanitizeHtml(html), sanitizer.sanitize(html));
+    }
+  }
+
+  public void testSanitize_cachesByContent() {
+    CountingSanitizer counting = new CountingSanitizer();
+    CachingHtmlSanitizer sanitizer = new CachingHtmlSanitizer(counting, 1 << 20);
+    assertEquals(0.0, sanitizer.hitRate());
+
+    SafeHtml first = sanitizer.sanitize(SIGNATURE);
+    // An equal input that is not the same instance.
+    SafeHtml second = sanitizer.sanitize(new String(SIGNATURE.toCharArray()));
+    sanitizer.sanitize(SIGNATURE + " ");
+    sanitizer.sanitize(SIGNATURE);
+
+    assertSame(first, second);
+    assertEquals(2, counting.calls.get());
+    assertEquals(2, sanitizer.size());
+    assertEquals(2, sanitizer.hitCount());
+    assertEquals(2, sanitizer.missCount());
+    assertEquals(0.5, sanitizer.hitRate());
+    assertEquals(
+        2 * CachingHtmlSanitizer.ENTRY_OVERHEAD
+            + 2 * (2 * SimpleHtmlSanitizer.sanitizeHtml(SIGNATURE).asString().length() + 1),
+        sanitizer.bytes());
+  }
+
+  public void testSanitize_boundedByBytes() {
+    long maximumBytes = 16 * 1024;
+    CachingHtmlSanitizer sanitizer =
+        new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), maximumBytes);
+    for (int i = 0; i < 1000; i++) {
+      sanitizer.sanitize("<b>message number " + i + "</b>");
+      assertTrue(sanitizer.bytes() <= maximumBytes);
+    }
+    assertTrue(sanitizer.evictionCount() > 0);
+    assertEquals(1000, sanitizer.missCount());
+    assertEquals(1000 - sanitizer.evictionCount(), sanitizer.size());
+
+    // A result larger than a segment's share of the bytes is returned but not kept.
+    StringBuilder large = new StringBuilder();
+    while (large.length() < maximumBytes) {
+      large.append("<b>large</b>");
+    }
+    assertEquals(
+        SimpleHtmlSanitizer.sanitizeHtml(large.toString()),
+        sanitizer.sanitize(large.toString()));
+    assertTrue(sanitizer.bytes() <= maximumBytes);
+  }
+
+  public void testSanitize_largeResultDoesNotEvict() {
+    CachingHtmlSanitizer sanitizer =
+        new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), 1 << 20);
+    for (int i = 0; i < 2000; i++) {
+      sanitizer.sanitize("<b>message number " + i + "</b>");
+    }
+    assertEquals(0, sanitizer.evictionCount());
+    long bytes = sanitizer.bytes();
+
+    StringBuilder large = new StringBuilder();
+    while (large.length() < 40000) {
+      large.append("<b>large</b>");
+    }
+    sanitizer.sanitize(large.toString());
+    assertEquals(0, sanitizer.evictionCount());
+    assertEquals(2000, sanitizer.size());
+    assertEquals(bytes, sanitizer.bytes());
+    // The small entries are all still cached.
+    for (int i = 0; i < 2000; i++) {
+      sanitizer.sanitize("<b>message number " + i + "</b>");
+    }
+    assertEquals(2001, sanitizer.missCount());
+    assertEquals(2000, sanitizer.hitCount());
+  }
+
+  public void testClear() {
+    CachingHtmlSanitizer sanitizer =
+        new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), 1 << 20);
+    sanitizer.sanitize(SIGNATURE);
+    sanitizer.clear();
+    assertEquals(0, sanitizer.size());
+    assertEquals(0, sanitizer.bytes());
+    assertEquals(1, sanitizer.missCount());
+  }
+
+  public void testConcurrentAccess() throws Exception {
+    CachingHtmlSanitizer sanitizer =
+        new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), 64 * 1024);
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  for (int i = 0; i < 2000; i++) {
+                    String html = "<i>" + (i % 300) + "</i> & more";
+                    assertEquals(
+                        SimpleHtmlSanitizer.sanitizeHtml(html), sanitizer.sanitize(html));
+                  }
+                } catch (Throwable e) {
+                  synchronized (failures) {
+                    failures.add(e);
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(failures.toString(), 0, failures.size());
+    assertEquals(8000, sanitizer.hitCount() + sanitizer.missCount());
+    assertTrue(sanitizer.bytes() <= 64 * 1024);
+  }
+
+  public void testIllegalArguments() {
+    try {
+      new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), 0);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new CachingHtmlSanitizer(SimpleHtmlSanitizer.getInstance(), 1024).sanitize(null);
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  /** A sanitizer that counts its calls. */
+  private static class CountingSanitizer implements HtmlSanitizer {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public SafeHtml sanitize(String html) {
+      calls.incrementAndGet();
+      return SimpleHtmlSanitizer.sanitizeHtml(html);
+    }
+  }
+}
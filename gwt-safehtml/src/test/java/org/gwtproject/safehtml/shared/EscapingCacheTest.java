@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link EscapingCache}. */
+public class EscapingCacheTest extends TestCase {
+
+  public void testFromString() {
+    EscapingCache cache = new EscapingCache(10, 100);
+    SafeHtml html = cache.fromString("<b>");
+    assertEquals(SafeHtmlUtils.fromString("<b>"), html);
+    assertSame(html, cache.fromString(new String("<b>")));
+    assertSame(html.asString(), cache.htmlEscape("<b>"));
+    assertEquals(1, cache.missCount());
+    assertEquals(2, cache.hitCount());
+  }
+
+  public void testSanitizeUri() {
+    EscapingCache cache = new EscapingCache(10, 100);
+    SafeUri uri = cache.fromUriString("http://example.com/a b");
+    assertEquals(UriUtils.fromString("http://example.com/a b"), uri);
+    assertSame(uri, cache.fromUriString("http://example.com/a b"));
+    assertSame(uri.asString(), cache.sanitizeUri("http://example.com/a b"));
+    assertEquals("#", cache.sanitizeUri("javascript:alert(1)"));
+  }
+
+  public void testHtmlAndUrisAreCachedSeparately() {
+    EscapingCache cache = new EscapingCache(10, 100);
+    assertEquals("a&amp;b", cache.htmlEscape("a&b"));
+    assertEquals("a&b", cache.sanitizeUri("a&b"));
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.missCount());
+  }
+
+  public void testLongInputsAreNotCached() {
+    EscapingCache cache = new EscapingCache(10, 3);
+    assertEquals("&lt;b&gt;", cache.htmlEscape("<b>"));
+    assertEquals("&lt;em&gt;", cache.htmlEscape("<em>"));
+    assertEquals("&lt;em&gt;", cache.htmlEscape("<em>"));
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.missCount());
+    assertEquals(0, cache.hitCount());
+  }
+
+  public void testEvictsLeastRecentlyUsed() {
+    // A single segment, so that the eviction order is fully determined.
+    EscapingCache cache = new EscapingCache(1, 100);
+    SafeHtml a = cache.fromString("a");
+    cache.fromString("b");
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.evictionCount());
+    assertNotSame(a, cache.fromString("a"));
+    assertEquals(3, cache.missCount());
+  }
+
+  public void testBounded() {
+    EscapingCache cache = new EscapingCache(100, 100);
+    for (int i = 0; i < 1000; i++) {
+      cache.htmlEscape("value " + i);
+    }
+    assertEquals(100, cache.size());
+    assertEquals(900, cache.evictionCount());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(1000, cache.missCount());
+  }
+
+  public void testConcurrentLookupsReturnTheSameInstance() throws Exception {
+    EscapingCache cache = new EscapingCache(1000, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<SafeHtml[]>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  SafeHtml[] results = new SafeHtml[100];
+                  for (int i = 0; i < results.length; i++) {
+                    results[i] = cache.fromString("<" + i + ">");
+                  }
+                  return results;
+                }));
+      }
+      SafeHtml[] first = futures.get(0).get();
+      for (Future<SafeHtml[]> future : futures) {
+        SafeHtml[] results = future.get();
+        for (int i = 0; i < results.length; i++) {
+          assertSame(first[i], results[i]);
+        }
+      }
+      assertEquals(400, cache.hitCount() + cache.missCount());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testInvalidArguments() {
+    try {
+      new EscapingCache(0, 10);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new EscapingCache(10, -1);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link Fingerprints} and {@link SafeHtmlUtils#fingerprint(SafeHtml)}. */
+public class FingerprintsTest extends TestCase {
+
+  private static final String TEXT = "What's <up> so&so \"now\"\n";
+
+  private static final BigInteger P = BigInteger.valueOf(Fingerprints.P);
+
+  public void testHash_matchesDefinition() {
+    String s = "\0<p>héllo, wörld😀</p>\uFFFF\uFFFF\uFFFF\uFFFF";
+    BigInteger m = BigInteger.valueOf(0x9E3779B97F4A7C15L >>> 3);
+    for (int end = 0; end <= s.length(); end++) {
+      BigInteger expected = BigInteger.ZERO;
+      for (int i = 0; i < end; i++) {
+        expected = expected.multiply(m).add(BigInteger.valueOf(s.charAt(i) + 1)).mod(P);
+      }
+      assertEquals(expected.longValue(), Fingerprints.hash(0, s, 0, end));
+      assertEquals(expected.longValue(), Fingerprints.hash(s.substring(0, end)));
+    }
+  }
+
+  public void testMultiply() {
+    long[] edges = {0, 1, 2, (1L << 31) - 1, 1L << 31, (1L << 60) + 12345, Fingerprints.P - 1};
+    for (long a : edges) {
+      for (long b : edges) {
+        assertMultiply(a, b);
+      }
+    }
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      assertMultiply(
+          (random.nextLong() >>> 3) % Fingerprints.P, (random.nextLong() >>> 3) % Fingerprints.P);
+    }
+  }
+
+  /**
+   * Thue-Morse strings and their complements collide under any polynomial hash modulo 2^64 once
+   * they are long enough, which made a modulus of 2^64 unfit for entity tags.
+   */
+  public void testFingerprint_thueMorse() {
+    int length = 2048;
+    StringBuilder thueMorse = new StringBuilder(length);
+    StringBuilder complement = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      boolean odd = Integer.bitCount(i) % 2 != 0;
+      thueMorse.append(odd ? 'b' : 'a');
+      complement.append(odd ? 'a' : 'b');
+    }
+    assertFalse(
+        SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString(thueMorse.toString()))
+            == SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString(complement.toString())));
+  }
+
+  public void testConcat() {
+    String s = "<p>Some HTML &amp; more HTML</p>";
+    for (int i = 0; i <= s.length(); i++) {
+      String left = s.substring(0, i);
+      String right = s.substring(i);
+      assertEquals(
+          Fingerprints.hash(s),
+          Fingerprints.concat(Fingerprints.hash(left), Fingerprints.hash(right), right.length()));
+      assertEquals(
+          Fingerprints.hash(s), Fingerprints.hash(Fingerprints.hash(left), s, i, s.length()));
+    }
+  }
+
+  public void testHashEscaped() {
+    assertEquals(
+        Fingerprints.hash(SafeHtmlUtils.htmlEscape(TEXT)), Fingerprints.hashEscaped(0, TEXT));
+  }
+
+  public void testFingerprint_equalForEqualHtml() {
+    String html = SafeHtmlUtils.htmlEscape(TEXT);
+    long expected = SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString(html));
+
+    assertEquals(expected, SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromString(TEXT)));
+    assertEquals(
+        expected,
+        SafeHtmlUtils.fingerprint(new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml(html)));
+    assertEquals(
+        expected,
+        SafeHtmlUtils.fingerprint(
+            SafeHtmlUtils.concat(
+                SafeHtmlUtils.fromString("What's <up>"),
+                SafeHtmlUtils.concat(
+                    SafeHtmlUtils.fromTrustedString(" so&amp;so "),
+                    SafeHtmlUtils.fromString("\"now\"")),
+                SafeHtmlUtils.fromTrustedString("\n"))));
+    assertEquals(
+        expected,
+        SafeHtmlUtils.fingerprint(
+            Stream.of("What's", " <up>", " so&so", " \"now\"\n")
+                .map(SafeHtmlUtils::fromString)
+                .collect(SafeHtmlCollectors.joining())));
+    for (boolean tracked : new boolean[] {false, true}) {
+      assertEquals(expected, SafeHtmlUtils.fingerprint(build(builder(tracked)).toSafeHtml()));
+      assertEquals(expected, SafeHtmlUtils.fingerprint(build(builder(tracked)).build()));
+      assertEquals(expected, SafeHtmlUtils.fingerprint(build(chunked(tracked)).toSafeHtml()));
+      assertEquals(expected, SafeHtmlUtils.fingerprint(build(chunked(tracked)).build()));
+    }
+  }
+
+  public void testFingerprint_differentForDifferentHtml() {
+    long empty = SafeHtmlUtils.fingerprint(SafeHtmlUtils.EMPTY_SAFE_HTML);
+    assertFalse(empty == SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString("\0")));
+    assertFalse(
+        SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString("ab"))
+            == SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString("ba")));
+    assertFalse(
+        SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromString("<"))
+            == SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString("<")));
+  }
+
+  public void testFingerprint_keptByValue() {
+    SafeHtmlString html = new SafeHtmlString("<p>text</p>");
+    assertEquals(0, html.knownContentHash());
+    long fingerprint = SafeHtmlUtils.fingerprint(html);
+    assertEquals(Fingerprints.hash("<p>text</p>"), html.knownContentHash());
+    assertEquals(fingerprint, SafeHtmlUtils.fingerprint(html));
+  }
+
+  public void testFingerprint_knownByTrackingBuilder() {
+    FingerprintedSafeHtml html = (FingerprintedSafeHtml) build(builder(true)).toSafeHtml();
+    assertEquals(Fingerprints.hash(html.asString()), html.knownContentHash());
+
+    html = (FingerprintedSafeHtml) build(builder(true)).build();
+    assertEquals(Fingerprints.hash(html.asString()), html.knownContentHash());
+
+    html = (FingerprintedSafeHtml) build(chunked(true)).build();
+    assertTrue(html instanceof SafeHtmlRope);
+    assertEquals(Fingerprints.hash(html.asString()), html.knownContentHash());
+
+    html = (FingerprintedSafeHtml) build(builder(false)).toSafeHtml();
+    assertEquals(0, html.knownContentHash());
+  }
+
+  public void testTrackFingerprint_catchesUp() {
+    SafeHtmlBuilder builder = build(SafeHtmlBuilder.chunked(4)).trackFingerprint();
+    build(builder).trackFingerprint();
+    FingerprintedSafeHtml html = (FingerprintedSafeHtml) builder.toSafeHtml();
+    assertEquals(Fingerprints.hash(html.asString()), html.knownContentHash());
+
+    builder.reset().appendEscaped(TEXT).trackFingerprint();
+    html = (FingerprintedSafeHtml) builder.toSafeHtml();
+    assertEquals(Fingerprints.hash(html.asString()), html.knownContentHash());
+  }
+
+  public void testTrackFingerprint_turnedOffByReset() {
+    SafeHtmlBuilder builder = build(new SafeHtmlBuilder()).trackFingerprint();
+    builder.reset().appendEscaped(TEXT);
+    FingerprintedSafeHtml html = (FingerprintedSafeHtml) builder.toSafeHtml();
+    assertEquals(0, html.knownContentHash());
+    assertEquals(
+        SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromString(TEXT)), SafeHtmlUtils.fingerprint(html));
+  }
+
+  public void testTrackFingerprint_afterBuild() {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder();
+    builder.build();
+    try {
+      builder.trackFingerprint();
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testFingerprint_builderCombinesKnownHashes() {
+    SafeHtml fragment = SafeHtmlUtils.fromTrustedString("<b>bold</b>");
+    SafeHtmlUtils.fingerprint(fragment);
+    SafeHtmlBuilder builder = SafeHtmlBuilder.chunked(8).trackFingerprint();
+    for (int i = 0; i < 5; i++) {
+      builder.appendEscaped("<" + i + ">").append(fragment).append(i);
+    }
+    FingerprintedSafeHtml html = (FingerprintedSafeHtml) builder.toSafeHtml();
+    assertEquals(Fingerprints.hash(html.asString()), html.knownContentHash());
+    builder.reset().append(fragment);
+    assertEquals(
+        SafeHtmlUtils.fingerprint(fragment), SafeHtmlUtils.fingerprint(builder.toSafeHtml()));
+  }
+
+  public void testFingerprint_doesNotMaterialize() {
+    SafeHtmlText text = new SafeHtmlText(TEXT);
+    SafeHtml rope = SafeHtmlUtils.concat(SafeHtmlUtils.fromTrustedString("<p>"), text);
+    assertEquals(
+        SafeHtmlUtils.fingerprint(
+            SafeHtmlUtils.fromTrustedString("<p>" + SafeHtmlUtils.htmlEscape(TEXT))),
+        SafeHtmlUtils.fingerprint(rope));
+    assertNotNull(text.text());
+  }
+
+  public void testFingerprint_deepRope() {
+    SafeHtml html = SafeHtmlUtils.fromTrustedString("x");
+    for (int i = 0; i < 100000; i++) {
+      html = SafeHtmlUtils.concat(html, SafeHtmlUtils.fromTrustedString("y"));
+    }
+    long fingerprint = SafeHtmlUtils.fingerprint(html);
+    assertEquals(
+        SafeHtmlUtils.fingerprint(SafeHtmlUtils.fromTrustedString(html.asString())), fingerprint);
+  }
+
+  private static void assertMultiply(long a, long b) {
+    long expected = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(P).longValue();
+    assertEquals(a + " * " + b, expected, Fingerprints.multiply(a, b));
+  }
+
+  private static SafeHtmlBuilder builder(boolean tracked) {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder();
+    return tracked ? builder.trackFingerprint() : builder;
+  }
+
+  private static SafeHtmlBuilder chunked(boolean tracked) {
+    SafeHtmlBuilder builder = SafeHtmlBuilder.chunked(4);
+    return tracked ? builder.trackFingerprint() : builder;
+  }
+
+  private static SafeHtmlBuilder build(SafeHtmlBuilder builder) {
+    return builder
+        .appendEscaped("What's")
+        .appendEscaped(" <up>")
+        .append(SafeHtmlUtils.fromString(" so&so"))
+        .appendEscaped(" \"now\"")
+        .appendHtmlConstant("\n");
+  }
+}
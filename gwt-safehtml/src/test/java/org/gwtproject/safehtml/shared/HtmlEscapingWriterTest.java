@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link HtmlEscapingWriter}. */
+public class HtmlEscapingWriterTest extends TestCase {
+
+  private static final String TEXT = "f\"bar '<&em><e/m>oo&bar";
+  private static final String ESCAPED = "f&quot;bar &#39;&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar";
+
+  public void testWriteString() throws IOException {
+    StringWriter out = new StringWriter();
+    HtmlEscapingWriter writer = new HtmlEscapingWriter(out);
+    writer.write(TEXT);
+    writer.flush();
+    assertEquals(ESCAPED, out.toString());
+  }
+
+  public void testWriteChars_splitAtEveryPosition() throws IOException {
+    char[] chars = TEXT.toCharArray();
+    for (int split = 0; split <= chars.length; split++) {
+      StringWriter out = new StringWriter();
+      HtmlEscapingWriter writer = new HtmlEscapingWriter(out);
+      writer.write(chars, 0, split);
+      writer.write(chars, split, chars.length - split);
+      assertEquals(ESCAPED, out.toString());
+    }
+  }
+
+  public void testWriteSingleChars() throws IOException {
+    StringWriter out = new StringWriter();
+    HtmlEscapingWriter writer = new HtmlEscapingWriter(out);
+    for (char c : TEXT.toCharArray()) {
+      writer.write(c);
+    }
+    assertEquals(ESCAPED, out.toString());
+  }
+
+  public void testAppend() throws IOException {
+    StringWriter out = new StringWriter();
+    new HtmlEscapingWriter(out).append(new StringBuilder("<a>")).append("x&y", 1, 3).append('"');
+    assertEquals("&lt;a&gt;&amp;y&quot;", out.toString());
+  }
+
+  public void testNoEscape() throws IOException {
+    StringWriter out = new StringWriter();
+    new HtmlEscapingWriter(out).write("foo bar");
+    assertEquals("foo bar", out.toString());
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import junit.framework.TestCase;
+
+/** Unit tests for {@link HtmlSanitizerPolicy}. */
+public class HtmlSanitizerPolicyTest extends TestCase {
+
+  private static final HtmlSanitizerPolicy POLICY =
+      HtmlSanitizerPolicy.builder()
+          .allowTags("p", "b", "i", "br", "ul", "li")
+          .allowAttributes("img", "alt", "title")
+          .allowAttributes("td", "colspan", "nowrap")
+          .allowUrlAttributes("a", "href")
+          .allowUrlAttributes("img", "src")
+          .build();
+
+  private static String sanitize(String html) {
+    return POLICY.sanitize(html).asString();
+  }
+
+  public void testText() {
+    assertEquals(
+        "foo &lt; bar &amp; that&#39;s &quot;good&quot;", sanitize("foo < bar & that's \"good\""));
+    assertEquals("&amp;amp; &lt;", sanitize("&amp;amp; &lt;"));
+  }
+
+  public void testAllowedTags() {
+    assertEquals("<p><b>bold</b><br></p>", sanitize("<p><b>bold</b><br/></p>"));
+    assertEquals("<ul><li>one</li></ul>", sanitize("<UL><Li>one</lI></ul >"));
+  }
+
+  public void testOtherTags() {
+    assertEquals("&lt;script&gt;evil()&lt;/script&gt;", sanitize("<script>evil()</script>"));
+    assertEquals("&lt;div&gt;&lt;/div&gt;", sanitize("<div></div>"));
+    assertEquals("&lt;&gt;&lt;/&gt;&lt; b&gt;&lt;1&gt;", sanitize("<></>< b><1>"));
+  }
+
+  public void testAttributes() {
+    assertEquals(
+        "<img alt=\"a &lt;cat&gt;\" title=\"x\" src=\"cat.png\">",
+        sanitize("<img alt='a <cat>' TITLE=x onerror=\"evil()\" src=\"cat.png\" class=c>"));
+    assertEquals("<td colspan=\"2\" nowrap>", sanitize("<td colspan = 2 nowrap>"));
+    assertEquals("<b>", sanitize("<b class=\"x\" id=y>"));
+    assertEquals("</a>", sanitize("</a href=\"x\">"));
+  }
+
+  public void testAttributeValuesAreDecodedAndEscaped() {
+    assertEquals("<img alt=\"&lt;&amp;&quot;\">", sanitize("<img alt=\"&lt;&amp;&quot;\">"));
+    assertEquals("<img title=\"&#39;\">", sanitize("<img title=\"&#39;\">"));
+  }
+
+  public void testUrlAttributes() {
+    assertEquals(
+        "<a href=\"http://example.com/?a=1&amp;b=2\">x</a>",
+        sanitize("<a href=\"http://example.com/?a=1&amp;b=2\">x</a>"));
+    assertEquals("<a href=\"#\">x</a>", sanitize("<a href=\"javascript:evil()\">x</a>"));
+    assertEquals("<a href=\"#\">x</a>", sanitize("<a href=\"javascript&#58;evil()\">x</a>"));
+    assertEquals("<a href=\"#\">x</a>", sanitize("<a href='&#x6A;avascript:evil()'>x</a>"));
+    assertEquals("<a href=\"\">x</a>", sanitize("<a href>x</a>"));
+  }
+
+  public void testIncompleteTags() {
+    assertEquals("&lt;b", sanitize("<b"));
+    assertEquals("&lt;img alt=&quot;x&gt;", sanitize("<img alt=\"x>"));
+    assertEquals("&lt;b &quot;x&quot;&gt;", sanitize("<b \"x\">"));
+    assertEquals("&lt;b<i>", sanitize("<b<i>"));
+  }
+
+  public void testUnclosedTags() {
+    StringBuilder html = new StringBuilder();
+    for (int i = 0; i < 40000; i++) {
+      html.append("<b a=x");
+    }
+    // Each '<' starts a tag that runs to the end of the input: this used to be quadratic.
+    assertEquals(SafeHtmlUtils.htmlEscape(html.toString()), sanitize(html.toString()));
+
+    // With a '>' at the end, tags are scanned up to their maximum length: the first one short
+    // enough to end there is kept, without its attributes.
+    html.append('>');
+    int tagStart = 0;
+    while (html.length() - tagStart > HtmlSanitizerPolicy.MAX_TAG_LENGTH) {
+      tagStart += "<b a=x".length();
+    }
+    assertEquals(
+        SafeHtmlUtils.htmlEscape(html.substring(0, tagStart)) + "<b>", sanitize(html.toString()));
+  }
+
+  public void testBuilder_rejectsUnsafeTagsAndAttributes() {
+    assertRejected(HtmlSanitizerPolicy.builder(), "script", null);
+    assertRejected(HtmlSanitizerPolicy.builder(), "STYLE", null);
+    assertRejected(HtmlSanitizerPolicy.builder(), "a b", null);
+    assertRejected(HtmlSanitizerPolicy.builder(), "b", "onclick");
+    assertRejected(HtmlSanitizerPolicy.builder(), "b", "Style");
+    assertRejected(HtmlSanitizerPolicy.builder(), "a", "href");
+    try {
+      HtmlSanitizerPolicy.builder().allowUrlAttributes("a", "onclick");
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testBuilder_urlTreatmentWins() {
+    HtmlSanitizerPolicy policy =
+        HtmlSanitizerPolicy.builder()
+            .allowUrlAttributes("img", "src")
+            .allowAttributes("img", "alt")
+            .allowUrlAttributes("img", "alt")
+            .build();
+    assertEquals(
+        "<img alt=\"#\" src=\"#\">",
+        policy.sanitize("<img alt=\"javascript:1\" src=\"javascript:2\">").asString());
+  }
+
+  public void testBuilder_isIndependentOfPolicies() {
+    HtmlSanitizerPolicy.Builder builder = HtmlSanitizerPolicy.builder().allowTags("b");
+    HtmlSanitizerPolicy policy = builder.build();
+    builder.allowTags("i");
+    assertEquals("<b>&lt;i&gt;", policy.sanitize("<b><i>").asString());
+    assertEquals("<b><i>", builder.build().sanitize("<b><i>").asString());
+  }
+
+  public void testEmptyPolicy() {
+    HtmlSanitizerPolicy policy = HtmlSanitizerPolicy.builder().build();
+    assertEquals("&lt;b&gt;x&lt;/b&gt;", policy.sanitize("<b>x</b>").asString());
+  }
+
+  public void testNull() {
+    try {
+      POLICY.sanitize(null);
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  private static void assertRejected(
+      HtmlSanitizerPolicy.Builder builder, String tag, String attribute) {
+    try {
+      if (attribute == null) {
+        builder.allowTags(tag);
+      } else {
+        builder.allowAttributes(tag, attribute);
+      }
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link HtmlSanitizers}. */
+public class HtmlSanitizersTest extends TestCase {
+
+  private static final int[] SIZES = {0, 1, 63, 64, 65, 1000, 5000};
+
+  public void testSanitizeAll_forkJoinPool() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int size : SIZES) {
+        List<String> inputs = comments(size);
+        assertEquals(
+            expected(inputs),
+            HtmlSanitizers.sanitizeAll(pool, SimpleHtmlSanitizer.getInstance(), inputs));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testSanitizeAll_executor() {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (int size : SIZES) {
+        List<String> inputs = comments(size);
+        assertEquals(
+            expected(inputs),
+            HtmlSanitizers.sanitizeAll(executor, 4, SimpleHtmlSanitizer.getInstance(), inputs));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testSanitizeAll_executorRunningNothing() {
+    List<String> inputs = comments(1000);
+    // The calling thread sanitizes everything when the executor never runs the tasks...
+    assertEquals(
+        expected(inputs),
+        HtmlSanitizers.sanitizeAll(task -> {}, 8, SimpleHtmlSanitizer.getInstance(), inputs));
+    // ...or rejects them.
+    assertEquals(
+        expected(inputs),
+        HtmlSanitizers.sanitizeAll(
+            task -> {
+              throw new RejectedExecutionException();
+            },
+            8,
+            SimpleHtmlSanitizer.getInstance(),
+            inputs));
+  }
+
+  public void testSanitizeAll_commonPoolStreamAndLinkedList() {
+    List<String> inputs = comments(1000);
+    List<SafeHtml> expected = expected(inputs);
+    assertEquals(
+        expected,
+        HtmlSanitizers.sanitizeAll(SimpleHtmlSanitizer.getInstance(), new LinkedList<>(inputs)));
+    assertEquals(
+        expected,
+        HtmlSanitizers.sanitizeAll(SimpleHtmlSanitizer.getInstance(), inputs.stream().parallel()));
+  }
+
+  public void testSanitizeAll_policy() {
+    HtmlSanitizerPolicy policy =
+        HtmlSanitizerPolicy.builder().allowTags("a").allowUrlAttributes("href").build();
+    List<String> inputs = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      String href = i % 2 == 0 ? "javascript:alert(" + i + ")" : "/" + i;
+      inputs.add("<a href=\"" + href + "\">x</a>");
+    }
+    assertEquals(
+        inputs.stream().map(policy::sanitize).collect(Collectors.toList()),
+        HtmlSanitizers.sanitizeAll(policy, inputs));
+  }
+
+  public void testSanitizeAll_resultIsUnmodifiable() {
+    List<SafeHtml> results =
+        HtmlSanitizers.sanitizeAll(SimpleHtmlSanitizer.getInstance(), comments(10));
+    try {
+      results.set(0, SafeHtmlUtils.EMPTY_SAFE_HTML);
+      fail("Should have thrown UnsupportedOperationException");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testSanitizeAll_sanitizerThrows() {
+    List<String> inputs = comments(1000);
+    inputs.set(777, "boom");
+    HtmlSanitizer throwing =
+        html -> {
+          if (html.equals("boom")) {
+            throw new IllegalStateException(html);
+          }
+          return SimpleHtmlSanitizer.sanitizeHtml(html);
+        };
+    ForkJoinPool pool = new ForkJoinPool(4);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      try {
+        HtmlSanitizers.sanitizeAll(pool, throwing, inputs);
+        fail("Should have thrown IllegalStateException");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      try {
+        HtmlSanitizers.sanitizeAll(executor, 4, throwing, inputs);
+        fail("Should have thrown IllegalStateException");
+      } catch (IllegalStateException e) {
+        assertEquals("boom", e.getMessage());
+      }
+    } finally {
+      pool.shutdown();
+      executor.shutdown();
+    }
+  }
+
+  public void testSanitizeAll_sanitizerReturnsNull() {
+    try {
+      HtmlSanitizers.sanitizeAll(html -> null, comments(10));
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  public void testSanitizeAll_invalidParallelism() {
+    try {
+      HtmlSanitizers.sanitizeAll(Runnable::run, 0, SimpleHtmlSanitizer.getInstance(), comments(1));
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testChunkSize() {
+    assertEquals(HtmlSanitizers.MIN_CHUNK_SIZE, HtmlSanitizers.chunkSize(0, 4));
+    assertEquals(HtmlSanitizers.MIN_CHUNK_SIZE, HtmlSanitizers.chunkSize(1000, 8));
+    assertEquals(625, HtmlSanitizers.chunkSize(10000, 4));
+    assertEquals(626, HtmlSanitizers.chunkSize(10001, 4));
+  }
+
+  private static List<SafeHtml> expected(List<String> inputs) {
+    return inputs.stream().map(SimpleHtmlSanitizer::sanitizeHtml).collect(Collectors.toList());
+  }
+
+  /** Returns {@code count} distinct comments, some of which need escaping. */
+  private static List<String> comments(int count) {
+    return Stream.iterate(0, i -> i + 1)
+        .limit(count)
+        .map(i -> i % 3 == 0 ? "<b>" + i + "</b> & <script>" : "comment " + i)
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import junit.framework.TestCase;
+
+/** Unit tests for {@link SafeHtmlBuilderPool}. */
+public class SafeHtmlBuilderPoolTest extends TestCase {
+
+  public void testAcquireRelease() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    SafeHtmlBuilder b = pool.acquire();
+    assertTrue(b.capacity() >= 64);
+    b.appendEscaped("<b>");
+    pool.release(b);
+    assertEquals(1, pool.size());
+
+    assertSame(b, pool.acquire());
+    assertEquals("", b.toSafeHtml().asString());
+    assertEquals(0, pool.size());
+  }
+
+  public void testRelease_turnsOffFingerprintTracking() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    SafeHtmlBuilder b = pool.acquire().trackFingerprint();
+    pool.release(b);
+
+    assertSame(b, pool.acquire());
+    b.appendEscaped("<b>");
+    assertEquals(0, ((FingerprintedSafeHtml) b.toSafeHtml()).knownContentHash());
+  }
+
+  public void testBuild() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    SafeHtml first = pool.build(b -> b.appendEscaped("a&b"));
+    SafeHtml second = pool.build(b -> b.appendHtmlConstant("<br>"));
+    assertEquals("a&amp;b", first.asString());
+    assertEquals("<br>", second.asString());
+    assertEquals(1, pool.size());
+  }
+
+  public void testBuild_releasesOnException() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    try {
+      pool.build(
+          b -> {
+            throw new IllegalStateException();
+          });
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(1, pool.size());
+  }
+
+  public void testBounded() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    SafeHtmlBuilder a = pool.acquire();
+    SafeHtmlBuilder b = pool.acquire();
+    SafeHtmlBuilder c = pool.acquire();
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+    assertEquals(2, pool.size());
+  }
+
+  public void testDropsOversizedBuilders() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    SafeHtmlBuilder b = pool.acquire();
+    for (int i = 0; i < 2048; i++) {
+      b.append('x');
+    }
+    pool.release(b);
+    assertEquals(0, pool.size());
+    assertNotSame(b, pool.acquire());
+  }
+
+  public void testDropsBuiltBuilders() {
+    SafeHtmlBuilderPool pool = new SafeHtmlBuilderPool(2, 64, 1024);
+    SafeHtmlBuilder b = pool.acquire();
+    SafeHtml html = b.appendHtmlConstant("<br>").build();
+    pool.release(b);
+    assertEquals(0, pool.size());
+    assertEquals("<br>", html.asString());
+  }
+
+  public void testInvalidArguments() {
+    try {
+      new SafeHtmlBuilderPool(0, 64, 1024);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new SafeHtmlBuilderPool(2, 2048, 1024);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -15,6 +15,11 @@
  */
 package org.gwtproject.safehtml.shared;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
 import junit.framework.TestCase;
 
 /** Unit tests for {@link SafeHtmlBuilder}. */
@@ -52,6 +57,192 @@ public class SafeHtmlBuilderTest extends TestCase {
     assertEquals(expected, b.toSafeHtml().asString());
   }
 
+  public void testAppendEscaped_range() {
+    SafeHtml html =
+        new SafeHtmlBuilder()
+            .appendHtmlConstant("<pre>")
+            .appendEscaped("line 1\n<b>line 2</b>\nline 3", 7, 20)
+            .appendHtmlConstant("</pre>")
+            .toSafeHtml();
+    assertEquals("<pre>&lt;b&gt;line 2&lt;/b&gt;</pre>", html.asString());
+  }
+
+  public void testAppendEscapedLines() {
+    assertEquals("", new SafeHtmlBuilder().appendEscapedLines("").toSafeHtml().asString());
+    assertEquals(
+        "a &lt;b&gt;<br>c&amp;d<br><br>e",
+        new SafeHtmlBuilder().appendEscapedLines("a <b>\nc&d\n\ne").toSafeHtml().asString());
+    assertEquals(
+        "<br>1<br>2<br>3<br><br>4<br>",
+        new SafeHtmlBuilder().appendEscapedLines("\n1\r\n2\r3\n\r4\r").toSafeHtml().asString());
+    assertEquals(
+        "<p>x&#39;y<br>z</p>",
+        new SafeHtmlBuilder()
+            .appendHtmlConstant("<p>")
+            .appendEscapedLines("x'y\r\nz")
+            .appendHtmlConstant("</p>")
+            .toSafeHtml()
+            .asString());
+  }
+
+  public void testCapacity() {
+    SafeHtmlBuilder b = new SafeHtmlBuilder(1024);
+    assertTrue(b.capacity() >= 1024);
+    b.appendEscaped("<b>");
+    assertEquals("&lt;b&gt;", b.toSafeHtml().asString());
+  }
+
+  public void testReset() {
+    SafeHtmlBuilder b = new SafeHtmlBuilder().appendEscaped("What's up so&so");
+    SafeHtml first = b.toSafeHtml();
+    int capacity = b.capacity();
+
+    assertSame(b, b.reset());
+    assertEquals("", b.toSafeHtml().asString());
+    assertEquals(capacity, b.capacity());
+
+    b.appendHtmlConstant("<br>");
+    assertEquals("<br>", b.toSafeHtml().asString());
+    assertEquals("What&#39;s up so&amp;so", first.asString());
+  }
+
+  public void testBuild() throws Exception {
+    SafeHtmlBuilder b = new SafeHtmlBuilder(16).appendEscaped("What's up so&so");
+    SafeHtml html = b.build();
+    assertTrue(html instanceof SafeHtmlBuffer);
+    assertTrue(b.isBuilt());
+
+    StringWriter out = new StringWriter();
+    SafeHtmlUtils.appendTo(html, out);
+    assertEquals("What&#39;s up so&amp;so", out.toString());
+    assertEquals(
+        "<p>What&#39;s up so&amp;so</p>",
+        new SafeHtmlBuilder()
+            .appendHtmlConstant("<p>")
+            .append(html)
+            .appendHtmlConstant("</p>")
+            .toSafeHtml()
+            .asString());
+
+    assertEquals("What&#39;s up so&amp;so", html.asString());
+    assertEquals(SafeHtmlUtils.fromSafeConstant("What&#39;s up so&amp;so"), html);
+    assertEquals(html, SafeHtmlUtils.fromSafeConstant("What&#39;s up so&amp;so"));
+    assertEquals("What&#39;s up so&amp;so".hashCode(), html.hashCode());
+  }
+
+  public void testBuild_mostlyUnusedBuffer() {
+    SafeHtml html = new SafeHtmlBuilder(1024).appendHtmlConstant("<br>").build();
+    assertTrue(html instanceof SafeHtmlString);
+    assertEquals("<br>", html.asString());
+  }
+
+  public void testBuild_consumesBuilder() {
+    SafeHtmlBuilder b = new SafeHtmlBuilder().appendHtmlConstant("<br>");
+    SafeHtml html = b.build();
+    try {
+      b.appendEscaped("foo");
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      b.toSafeHtml();
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      b.build();
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    b.reset().appendEscaped("<b>");
+    assertFalse(b.isBuilt());
+    assertEquals("&lt;b&gt;", b.build().asString());
+    assertEquals("<br>", html.asString());
+  }
+
+  public void testBuild_serialization() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      text.append("<b>").append(i).append("</b>");
+    }
+    SafeHtml html = new SafeHtmlBuilder().appendEscaped(text.toString()).build();
+    StringWriter out = new StringWriter();
+    SafeHtmlUtils.appendTo(html, out);
+
+    Object copy = roundTrip(html);
+    assertTrue(copy instanceof SafeHtmlString);
+    assertEquals(out.toString(), ((SafeHtml) copy).asString());
+    assertEquals(html, copy);
+  }
+
+  public void testChunked() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      text.append("<b>").append(i).append("</b>\n");
+    }
+    SafeHtmlBuilder expected = new SafeHtmlBuilder();
+    for (int chunkSize = 1; chunkSize < 40; chunkSize += 3) {
+      SafeHtmlBuilder b = SafeHtmlBuilder.chunked(chunkSize);
+      appendSample(b, text.toString());
+      SafeHtml html = b.toSafeHtml();
+      assertTrue(html instanceof SafeHtmlRope);
+
+      expected.reset();
+      appendSample(expected, text.toString());
+      String expectedHtml = expected.toSafeHtml().asString();
+      StringWriter out = new StringWriter();
+      SafeHtmlUtils.appendTo(html, out);
+      assertEquals(expectedHtml, out.toString());
+      assertEquals(expectedHtml, html.asString());
+      assertEquals(expected.toSafeHtml(), html);
+
+      // The builder is still usable, and doesn't affect the HTML returned so far.
+      b.appendHtmlConstant("<hr>");
+      assertEquals(expectedHtml + "<hr>", b.toSafeHtml().asString());
+      assertEquals(expectedHtml, html.asString());
+    }
+  }
+
+  public void testChunked_buildAndReset() {
+    SafeHtmlBuilder b = SafeHtmlBuilder.chunked(4).appendEscaped("What's up so&so");
+    SafeHtml html = b.build();
+    assertEquals("What&#39;s up so&amp;so", html.asString());
+    try {
+      b.appendHtmlConstant("<br>");
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    b.reset().appendHtmlConstant("<br>").appendEscaped("a<b");
+    assertEquals("<br>a&lt;b", b.build().asString());
+    assertEquals("", b.reset().toSafeHtml().asString());
+    assertEquals("", SafeHtmlBuilder.chunked(4).toSafeHtml().asString());
+  }
+
+  public void testChunked_invalidChunkSize() {
+    try {
+      SafeHtmlBuilder.chunked(0);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static void appendSample(SafeHtmlBuilder b, String text) {
+    b.appendHtmlConstant("<div>")
+        .appendEscaped(text)
+        .appendEscaped(text, 3, 70)
+        .appendEscapedLines(text)
+        .append(SafeHtmlUtils.fromString(text))
+        .append('&')
+        .append(42)
+        .appendHtmlConstant("</div>");
+  }
+
   public void testAppendHtmlConstant_innerHtml() {
     SafeHtml html =
         new SafeHtmlBuilder()
@@ -94,4 +285,15 @@ public class SafeHtmlBuilderTest extends TestCase {
     SafeHtml html = b.toSafeHtml();
     assertEquals("a&amp;b&lt;c&gt;d&quot;e&#39;f", html.asString());
   }
+
+  private static Object roundTrip(Object o) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(o);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return in.readObject();
+    }
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link SafeHtmlCollectors}. */
+public class SafeHtmlCollectorsTest extends TestCase {
+
+  private static final SafeHtml SEPARATOR = SafeHtmlUtils.fromSafeConstant("<br>");
+  private static final SafeHtml PREFIX = SafeHtmlUtils.fromSafeConstant("<p>");
+  private static final SafeHtml SUFFIX = SafeHtmlUtils.fromSafeConstant("</p>");
+
+  public void testJoining() {
+    List<SafeHtml> empty = Collections.emptyList();
+    assertEquals("", empty.stream().collect(SafeHtmlCollectors.joining()).asString());
+    assertEquals("a&amp;bc", rows(2).stream().collect(SafeHtmlCollectors.joining()).asString());
+  }
+
+  public void testJoining_separator() {
+    assertEquals(
+        "a&amp;b<br>c<br>a&amp;b",
+        rows(3).stream().collect(SafeHtmlCollectors.joining(SEPARATOR)).asString());
+    List<SafeHtml> single = rows(2).subList(1, 2);
+    assertEquals("c", single.stream().collect(SafeHtmlCollectors.joining(SEPARATOR)).asString());
+  }
+
+  public void testJoining_prefixAndSuffix() throws Exception {
+    SafeHtml html =
+        rows(3).stream().collect(SafeHtmlCollectors.joining(SEPARATOR, PREFIX, SUFFIX));
+    assertEquals("<p>a&amp;b<br>c<br>a&amp;b</p>", html.asString());
+
+    StringWriter out = new StringWriter();
+    SafeHtmlUtils.appendTo(
+        rows(3).stream().collect(SafeHtmlCollectors.joining(SEPARATOR, PREFIX, SUFFIX)), out);
+    assertEquals(html.asString(), out.toString());
+
+    List<SafeHtml> empty = Collections.emptyList();
+    assertEquals(
+        "<p></p>",
+        empty.stream().collect(SafeHtmlCollectors.joining(SEPARATOR, PREFIX, SUFFIX)).asString());
+  }
+
+  public void testJoining_parallelStream() {
+    List<Integer> numbers = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+    String expected =
+        numbers.stream().map(String::valueOf).collect(Collectors.joining("<br>", "<p>", "</p>"));
+    SafeHtml html =
+        numbers.parallelStream()
+            .map(i -> SafeHtmlUtils.fromTrustedString(String.valueOf(i)))
+            .collect(SafeHtmlCollectors.joining(SEPARATOR, PREFIX, SUFFIX));
+    assertEquals(expected, html.asString());
+  }
+
+  public void testJoining_null() {
+    try {
+      Arrays.asList(PREFIX, null).stream().collect(SafeHtmlCollectors.joining());
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  public void testJoinParallel() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int size : new int[] {0, 1, 2, 3, 15, 16, 17, 1000}) {
+        List<Integer> numbers = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        String expected =
+            numbers.stream()
+                .map(i -> "<b>" + i + "</b>")
+                .collect(Collectors.joining("<br>", "<p>", "</p>"));
+        SafeHtml html =
+            SafeHtmlCollectors.joinParallel(
+                pool,
+                numbers,
+                i ->
+                    new SafeHtmlBuilder()
+                        .appendHtmlConstant("<b>")
+                        .append(i)
+                        .appendHtmlConstant("</b>")
+                        .toSafeHtml(),
+                SEPARATOR,
+                PREFIX,
+                SUFFIX);
+        assertEquals(expected, html.asString());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testJoinParallel_commonPoolAndLinkedList() {
+    List<SafeHtml> rows = new LinkedList<>(rows(100));
+    SafeHtml html =
+        SafeHtmlCollectors.joinParallel(
+            rows,
+            row -> row,
+            SafeHtmlUtils.EMPTY_SAFE_HTML,
+            SafeHtmlUtils.EMPTY_SAFE_HTML,
+            SafeHtmlUtils.EMPTY_SAFE_HTML);
+    assertEquals(rows.stream().collect(SafeHtmlCollectors.joining()), html);
+  }
+
+  public void testJoinParallel_rendererThrows() {
+    try {
+      SafeHtmlCollectors.joinParallel(
+          rows(100),
+          row -> {
+            if (row.asString().equals("c")) {
+              throw new IllegalStateException("c");
+            }
+            return row;
+          },
+          SEPARATOR,
+          PREFIX,
+          SUFFIX);
+      fail("Should have thrown IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testJoinParallel_rendererReturnsNull() {
+    try {
+      SafeHtmlCollectors.joinParallel(rows(10), row -> null, SEPARATOR, PREFIX, SUFFIX);
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  /** Returns {@code count} rows, alternating between two values. */
+  private static List<SafeHtml> rows(int count) {
+    List<SafeHtml> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rows.add(SafeHtmlUtils.fromString(i % 2 == 0 ? "a&b" : "c"));
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link SafeHtmlUtils#concat} and {@link SafeHtmlRope}. */
+public class SafeHtmlRopeTest extends TestCase {
+
+  private static final SafeHtml FOO = SafeHtmlUtils.fromSafeConstant("<b>foo</b>");
+  private static final SafeHtml BAR = SafeHtmlUtils.fromString("bar&");
+
+  public void testConcat() {
+    SafeHtml html = SafeHtmlUtils.concat(FOO, BAR, FOO);
+    assertEquals("<b>foo</b>bar&amp;<b>foo</b>", html.asString());
+    assertSame(html.asString(), html.asString());
+  }
+
+  public void testConcat_emptyAndSingle() {
+    assertSame(SafeHtmlUtils.EMPTY_SAFE_HTML, SafeHtmlUtils.concat());
+    assertSame(FOO, SafeHtmlUtils.concat(FOO));
+  }
+
+  public void testConcat_nested() {
+    SafeHtml html = SafeHtmlUtils.concat(FOO, SafeHtmlUtils.concat(BAR, SafeHtmlUtils.concat()));
+    html = SafeHtmlUtils.concat(html, SafeHtmlUtils.concat(html, BAR));
+    assertEquals(
+        "<b>foo</b>bar&amp;<b>foo</b>bar&amp;bar&amp;", SafeHtmlUtils.concat(html).asString());
+  }
+
+  public void testConcat_deeplyNested() {
+    SafeHtml html = SafeHtmlUtils.EMPTY_SAFE_HTML;
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      html = SafeHtmlUtils.concat(html, BAR);
+      expected.append("bar&amp;");
+    }
+    assertEquals(expected.toString(), html.asString());
+  }
+
+  public void testConcat_doesNotKeepArgumentArray() {
+    SafeHtml[] fragments = {FOO, BAR};
+    SafeHtml html = SafeHtmlUtils.concat(fragments);
+    fragments[0] = BAR;
+    assertEquals("<b>foo</b>bar&amp;", html.asString());
+  }
+
+  public void testConcat_null() {
+    try {
+      SafeHtmlUtils.concat(FOO, null);
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  public void testAppendTo() throws IOException {
+    SafeHtml html = SafeHtmlUtils.concat(FOO, SafeHtmlUtils.concat(BAR, FOO));
+    StringWriter out = new StringWriter();
+    SafeHtmlUtils.appendTo(html, out);
+    assertEquals("<b>foo</b>bar&amp;<b>foo</b>", out.toString());
+
+    StringBuilder sb = new StringBuilder("x");
+    SafeHtmlUtils.appendTo(html, sb);
+    assertEquals("x<b>foo</b>bar&amp;<b>foo</b>", sb.toString());
+
+    // Once flattened.
+    html.asString();
+    out = new StringWriter();
+    SafeHtmlUtils.appendTo(html, out);
+    assertEquals("<b>foo</b>bar&amp;<b>foo</b>", out.toString());
+  }
+
+  public void testBuilderAppend() {
+    SafeHtml html = SafeHtmlUtils.concat(FOO, BAR);
+    SafeHtml built = new SafeHtmlBuilder().append(html).append(html).toSafeHtml();
+    assertEquals("<b>foo</b>bar&amp;<b>foo</b>bar&amp;", built.asString());
+  }
+
+  public void testEquals() {
+    SafeHtml html = SafeHtmlUtils.concat(FOO, BAR);
+    SafeHtml string = SafeHtmlUtils.fromSafeConstant("<b>foo</b>bar&amp;");
+    assertEquals(string, html);
+    assertEquals(html, string);
+    assertEquals(string.hashCode(), html.hashCode());
+    assertFalse(html.equals(FOO));
+  }
+
+  public void testSerialization() throws Exception {
+    SafeHtml html = SafeHtmlUtils.concat(FOO, SafeHtmlUtils.concat(BAR, FOO));
+    Object copy = roundTrip(html);
+    // Serialized flat, without the fragments.
+    assertTrue(copy instanceof SafeHtmlString);
+    assertEquals(html, copy);
+    html.asString();
+    copy = roundTrip(html);
+    assertTrue(copy instanceof SafeHtmlString);
+    assertEquals(html, copy);
+  }
+
+  private static Object roundTrip(Object o) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(o);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return in.readObject();
+    }
+  }
+}
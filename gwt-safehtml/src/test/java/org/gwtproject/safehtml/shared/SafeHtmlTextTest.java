@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link SafeHtmlText}. */
+public class SafeHtmlTextTest extends TestCase {
+
+  private static final String TEXT = "What's <up> so&so \"now\"";
+  private static final String ESCAPED = "What&#39;s &lt;up&gt; so&amp;so &quot;now&quot;";
+
+  public void testFromString() {
+    SafeHtml html = SafeHtmlUtils.fromString(TEXT);
+    assertTrue(html instanceof SafeHtmlText);
+    assertEquals(ESCAPED, html.asString());
+    assertSame(html.asString(), html.asString());
+  }
+
+  public void testFromString_null() {
+    try {
+      SafeHtmlUtils.fromString(null);
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  public void testLength() {
+    SafeHtmlText html = new SafeHtmlText(TEXT);
+    assertEquals(ESCAPED.length(), html.length());
+    assertNotNull(html.text());
+    html.asString();
+    assertNull(html.text());
+    assertEquals(ESCAPED.length(), html.length());
+  }
+
+  public void testAppendTo_doesNotEscapeIntoString() throws Exception {
+    SafeHtmlText html = new SafeHtmlText(TEXT);
+    StringBuilder sb = new StringBuilder("<p>");
+    html.appendTo(sb);
+    assertEquals("<p>" + ESCAPED, sb.toString());
+
+    StringWriter out = new StringWriter();
+    SafeHtmlUtils.appendTo(html, out);
+    assertEquals(ESCAPED, out.toString());
+
+    assertEquals(
+        "<p>" + ESCAPED + "</p>",
+        new SafeHtmlBuilder()
+            .appendHtmlConstant("<p>")
+            .append(html)
+            .appendHtmlConstant("</p>")
+            .toSafeHtml()
+            .asString());
+    assertEquals(ESCAPED, utf8(html));
+    assertEquals(ESCAPED, SafeHtmlUtils.concat(html, SafeHtmlUtils.EMPTY_SAFE_HTML).asString());
+    assertNotNull(html.text());
+  }
+
+  public void testAppendTo_afterAsString() throws Exception {
+    SafeHtmlText html = new SafeHtmlText(TEXT);
+    html.asString();
+    StringBuilder sb = new StringBuilder();
+    html.appendTo(sb);
+    assertEquals(ESCAPED, sb.toString());
+    StringWriter out = new StringWriter();
+    html.appendTo(out);
+    assertEquals(ESCAPED, out.toString());
+    assertEquals(ESCAPED, utf8(html));
+  }
+
+  public void testEquals() {
+    SafeHtml html = SafeHtmlUtils.fromString(TEXT);
+    SafeHtml string = SafeHtmlUtils.fromSafeConstant(ESCAPED);
+    assertEquals(string, html);
+    assertEquals(html, string);
+    assertEquals(ESCAPED.hashCode(), html.hashCode());
+    assertEquals("safe: \"" + ESCAPED + "\"", html.toString());
+    assertFalse(html.equals(SafeHtmlUtils.fromString(ESCAPED)));
+  }
+
+  public void testSerialization() throws Exception {
+    SafeHtml html = SafeHtmlUtils.fromString(TEXT);
+    assertEquals(ESCAPED, ((SafeHtml) roundTrip(html)).asString());
+    html.asString();
+    assertEquals(ESCAPED, ((SafeHtml) roundTrip(html)).asString());
+  }
+
+  private static String utf8(SafeHtml html) {
+    return new String(new Utf8SafeHtmlBuilder().append(html).toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static Object roundTrip(Object o) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(o);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return in.readObject();
+    }
+  }
+}
@@ -15,6 +15,11 @@
  */
 package org.gwtproject.safehtml.shared;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
 import junit.framework.TestCase;
 
 /** Unit tests for SafeHtmlUtils. */
@@ -35,6 +40,17 @@ public class SafeHtmlUtilsTest extends TestCase {
     assertEquals("foobar", escaped);
   }
 
+  public void testEscape_noEscapeReturnsInput() {
+    String unescaped = "foo bar baz";
+    assertSame(unescaped, SafeHtmlUtils.htmlEscape(unescaped));
+  }
+
+  public void testEscape_metaCharactersAtBoundaries() {
+    assertEquals("&lt;", SafeHtmlUtils.htmlEscape("<"));
+    assertEquals("&amp;foo&gt;", SafeHtmlUtils.htmlEscape("&foo>"));
+    assertEquals("&#39;&#39;&quot;&quot;", SafeHtmlUtils.htmlEscape("''\"\""));
+  }
+
   public void testEscape_ampersand() {
     String escaped = SafeHtmlUtils.htmlEscape("foo&bar");
     assertEquals("foo&amp;bar", escaped);
@@ -50,6 +66,33 @@ public class SafeHtmlUtilsTest extends TestCase {
     assertEquals("f&quot;bar &#39;&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar", escaped);
   }
 
+  public void testEscapeText() {
+    String escaped = SafeHtmlUtils.htmlEscapeText("f\"bar \'<&em><e/m>oo&bar");
+    assertEquals("f\"bar \'&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar", escaped);
+  }
+
+  public void testEscapeDoubleQuotedAttribute() {
+    String escaped = SafeHtmlUtils.htmlEscapeDoubleQuotedAttribute("f\"bar \'<&em><e/m>oo&bar");
+    assertEquals("f&quot;bar \'<&amp;em><e/m>oo&amp;bar", escaped);
+  }
+
+  public void testEscapeText_noEscapeReturnsInput() {
+    String s = new String("f\"bar \'");
+    assertSame(s, SafeHtmlUtils.htmlEscapeText(s));
+    s = new String("<b>it's</b>");
+    assertSame(s, SafeHtmlUtils.htmlEscapeDoubleQuotedAttribute(s));
+  }
+
+  public void testEscapeTextTo() {
+    StringBuilder sb = new StringBuilder("<b>");
+    SafeHtmlUtils.htmlEscapeTextTo("\"a\" & <b>", sb);
+    assertEquals("<b>\"a\" &amp; &lt;b&gt;", sb.toString());
+
+    sb = new StringBuilder("<b title=\"");
+    SafeHtmlUtils.htmlEscapeDoubleQuotedAttributeTo("\"a\" & <b>", sb);
+    assertEquals("<b title=\"&quot;a&quot; &amp; <b>", sb.toString());
+  }
+
   public void testEscape_withEntities1() {
     String escaped = SafeHtmlUtils.htmlEscapeAllowEntities("f\"bar \'<&em><e/m>oo&bar");
     assertEquals("f&quot;bar &#39;&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar", escaped);
@@ -72,7 +115,97 @@ public class SafeHtmlUtilsTest extends TestCase {
 
   public void testEscape_withEntitiesInvalidEntities() {
     String escaped = SafeHtmlUtils.htmlEscapeAllowEntities("&a mp;&;&x;&#;&#x;");
-    assertEquals("&amp;a mp;&amp;;&x;&amp;#;&amp;#x;", escaped);
+    assertEquals("&amp;a mp;&amp;;&amp;x;&amp;#;&amp;#x;", escaped);
+  }
+
+  public void testEscape_withHtml5Entities() {
+    String escaped = SafeHtmlUtils.htmlEscapeAllowEntities("&AElig;&frac12;&nbsp;&NotEqualTilde;");
+    assertEquals("&AElig;&frac12;&nbsp;&NotEqualTilde;", escaped);
+
+    escaped = SafeHtmlUtils.htmlEscapeAllowEntities("&bogus; &amp &AELIG; &frac12");
+    assertEquals("&amp;bogus; &amp;amp &amp;AELIG; &amp;frac12", escaped);
+  }
+
+  public void testEscapeTo_stringBuilder() {
+    StringBuilder sb = new StringBuilder("<b>");
+    SafeHtmlUtils.htmlEscapeTo("f\"bar \'<&em>", sb);
+    assertEquals("<b>f&quot;bar &#39;&lt;&amp;em&gt;", sb.toString());
+  }
+
+  public void testEscapeTo_appendable() throws IOException {
+    StringWriter out = new StringWriter();
+    SafeHtmlUtils.htmlEscapeTo(new StringBuilder("foo&bar<"), out);
+    assertEquals("foo&amp;bar&lt;", out.toString());
+  }
+
+  public void testEscape_range() {
+    String text = "<p>foo&bar</p>";
+    assertEquals("foo&amp;bar", SafeHtmlUtils.htmlEscape(text, 3, 10));
+    assertEquals("foo", SafeHtmlUtils.htmlEscape(new StringBuilder(text), 3, 6));
+    assertEquals("", SafeHtmlUtils.htmlEscape(text, 3, 3));
+
+    StringBuilder sb = new StringBuilder();
+    SafeHtmlUtils.htmlEscapeTo(text, 0, 4, sb);
+    assertEquals("&lt;p&gt;f", sb.toString());
+  }
+
+  public void testEscape_invalidRange() {
+    try {
+      SafeHtmlUtils.htmlEscape("foo", 2, 1);
+      fail("Should have thrown IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      SafeHtmlUtils.htmlEscapeTo("foo", 0, 4, new StringBuilder());
+      fail("Should have thrown IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testEscapeAllowEntitiesTo() {
+    StringBuilder sb = new StringBuilder("x");
+    SafeHtmlUtils.htmlEscapeAllowEntitiesTo("&foo &&amp; bar &#39; baz&", sb);
+    assertEquals("x&amp;foo &amp;&amp; bar &#39; baz&amp;", sb.toString());
+  }
+
+  public void testUnescape() throws IOException {
+    StringBuilder sb = new StringBuilder("x");
+    SafeHtmlUtils.htmlUnescape("f&quot;bar &#39;&lt;&amp;em&gt;&lt;e/m&gt;oo&amp;bar", sb);
+    assertEquals("xf\"bar '<&em><e/m>oo&bar", sb.toString());
+  }
+
+  public void testUnescape_namedReferences() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    SafeHtmlUtils.htmlUnescape("&AElig;&frac12;&NotEqualTilde;&Afr;&bogus;&AELIG;", sb);
+    assertEquals("\u00C6\u00BD\u2242\u0338\uD835\uDD04&bogus;&AELIG;", sb.toString());
+  }
+
+  public void testUnescape_legacyReferencesWithoutSemicolon() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    SafeHtmlUtils.htmlUnescape("&amp &ltfoo &notit; &notin; &copy2", sb);
+    assertEquals("& <foo \u00ACit; \u2209 \u00A92", sb.toString());
+  }
+
+  public void testUnescape_numericReferences() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    SafeHtmlUtils.htmlUnescape(
+        "&#65;&#x42;&#X43;&#68&#x1D504;&#0;&#xD800;&#99999999999;&#x80;&#x81;", sb);
+    assertEquals("ABCD\uD835\uDD04\uFFFD\uFFFD\uFFFD\u20AC\u0081", sb.toString());
+  }
+
+  public void testUnescape_notReferences() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    SafeHtmlUtils.htmlUnescape("&&; & &# &#x; &#xg; <b>&</b>", sb);
+    assertEquals("&&; & &# &#x; &#xg; <b>&</b>", sb.toString());
+  }
+
+  public void testUnescape_roundTrip() throws IOException {
+    String text = "f\"bar '<&em><e/m>oo&bar &amp; \u00C6";
+    StringBuilder sb = new StringBuilder();
+    SafeHtmlUtils.htmlUnescape(SafeHtmlUtils.htmlEscape(text), sb);
+    assertEquals(text, sb.toString());
   }
 
   public void testFromSafeConstant() {
@@ -94,6 +227,39 @@ public class SafeHtmlUtilsTest extends TestCase {
     assertEquals(SafeHtmlUtils.htmlEscape(CONSTANT_HTML), h.asString());
   }
 
+  public void testUtf8Of() {
+    SafeHtml html = SafeHtmlUtils.fromSafeConstant("<b>é€😀</b>");
+    assertNull(SafeHtmlUtils.cachedUtf8Of(html));
+    ByteBuffer utf8 = SafeHtmlUtils.utf8Of(html);
+    assertTrue(utf8.isReadOnly());
+    assertEquals(0, utf8.position());
+    assertEquals("<b>é€😀</b>", decode(utf8));
+    try {
+      utf8.put(0, (byte) 'x');
+      fail("Should have thrown ReadOnlyBufferException");
+    } catch (ReadOnlyBufferException e) {
+      // expected
+    }
+
+    // The encoding is kept, and each call returns a view of its own.
+    byte[] cached = SafeHtmlUtils.cachedUtf8Of(html);
+    assertNotNull(cached);
+    ByteBuffer again = SafeHtmlUtils.utf8Of(html);
+    assertEquals(0, again.position());
+    assertEquals(cached.length, again.remaining());
+    assertSame(cached, SafeHtmlUtils.cachedUtf8Of(html));
+
+    SafeHtml generated = new OnlyToBeUsedInGeneratedCodeStringBlessedAsSafeHtml("<i>ü</i>");
+    assertEquals("<i>ü</i>", decode(SafeHtmlUtils.utf8Of(generated)));
+    assertNotNull(SafeHtmlUtils.cachedUtf8Of(generated));
+  }
+
+  public void testUtf8Of_notKept() {
+    SafeHtml html = SafeHtmlUtils.fromString("<é>");
+    assertEquals("&lt;é&gt;", decode(SafeHtmlUtils.utf8Of(html)));
+    assertNull(SafeHtmlUtils.cachedUtf8Of(html));
+  }
+
   public void testEscape_chars() {
     String escaped = SafeHtmlUtils.htmlEscape('a');
     assertEquals("a", escaped);
@@ -113,4 +279,8 @@ public class SafeHtmlUtilsTest extends TestCase {
     escaped = SafeHtmlUtils.htmlEscape('\'');
     assertEquals("&#39;", escaped);
   }
+
+  private static String decode(ByteBuffer utf8) {
+    return StandardCharsets.UTF_8.decode(utf8).toString();
+  }
 }
@@ -73,6 +73,27 @@ public class SharedUriUtilsTest extends TestCase {
     assertEquals("fo%20o%25b%0Aa%22r", UriUtils.encode("fo o%b\na\"r"));
   }
 
+  public void testEncodeTo() {
+    StringBuilder sb = new StringBuilder("x");
+    UriUtils.encodeTo("fo o%b\u20AC", sb);
+    assertEquals("xfo%20o%25b%E2%82%AC", sb.toString());
+  }
+
+  public void testEncode_range() {
+    String text = "see <http://foo.com/a b> here";
+    assertEquals("http://foo.com/a%20b", UriUtils.encode(text, 5, 23));
+
+    StringBuilder sb = new StringBuilder();
+    UriUtils.encodeTo(new StringBuilder(text), 0, 5, sb);
+    assertEquals("see%20%3C", sb.toString());
+  }
+
+  public void testEncodeAllowEscapesTo() {
+    StringBuilder sb = new StringBuilder("x");
+    UriUtils.encodeAllowEscapesTo("foo%E2%82%ACb ar%a", sb);
+    assertEquals("xfoo%E2%82%ACb%20ar%25a", sb.toString());
+  }
+
   public void testEncode_withEscapes1() {
     assertEquals("foo%bar", UriUtils.encodeAllowEscapes("foo%bar"));
   }
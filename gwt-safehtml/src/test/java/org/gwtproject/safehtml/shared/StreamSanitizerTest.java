@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link StreamSanitizer}. */
+public class StreamSanitizerTest extends TestCase {
+
+  private static final String[] FRAGMENTS = {
+    "<", "</", ">", "b", "em", "h1", "li", "strong", "a", "img", " href=", "'x'", "\"y\"", " alt",
+    "=", "javascript:", "&", "&amp;", "amp;", "&#x6a;", "&#", "12", ";", "&notin;", "'", "\"",
+    " ", "text", "\n", "<b>", "</em>", "<a href=\"http://x/?a&amp;b\">"
+  };
+
+  private static final HtmlSanitizerPolicy POLICY =
+      HtmlSanitizerPolicy.builder()
+          .allowTags("b", "em", "li")
+          .allowAttributes("img", "alt")
+          .allowUrlAttributes("a", "href")
+          .allowUrlAttributes("img", "src")
+          .build();
+
+  /** The number of characters of the first window, after which the input is split. */
+  private static final int WINDOW_LENGTH =
+      StreamSanitizer.READ_LENGTH + StreamSanitizer.MAX_TOKEN_LENGTH;
+
+  private static final String[] TOKENS = {
+    "<b>", "</em>", "<li/>", "<a href=\"http://x/?a&amp;b\">", "<img alt='x' src=\"javascript:y\">",
+    "<script>", "<b", "<", "&amp;", "&#x6a;", "&#12;", "&notin;", "&amp", "&#", "&"
+  };
+
+  public void testSameAsString_randomInputsAcrossWindows() throws IOException {
+    Random random = new Random(42);
+    for (int n = 0; n < 500; n++) {
+      StringBuilder html = new StringBuilder();
+      for (int i = 1 + random.nextInt(20); i > 0; i--) {
+        html.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      // Split the input at a random position by the end of the first window.
+      int split = random.nextInt(html.length() + 1);
+      assertSameAsString(padding(WINDOW_LENGTH - split) + html);
+    }
+  }
+
+  public void testSameAsString_tokensAtEveryOffset() throws IOException {
+    for (String token : TOKENS) {
+      for (int i = -token.length() - 1; i <= 1; i++) {
+        // Across the end of the first window.
+        assertSameAsString(padding(WINDOW_LENGTH + i) + token + " text");
+        // Across the end of the second window, after a first window ending in text.
+        assertSameAsString(padding(2 * WINDOW_LENGTH + i) + token + " text");
+        // Across the end of the second window, after a first window ending in a kept tag.
+        String input = padding(WINDOW_LENGTH - 2) + "<b>" + padding(WINDOW_LENGTH - 3 + i);
+        assertSameAsString(input + token + " text");
+      }
+    }
+  }
+
+  public void testSameAsString_acrossWindows() throws IOException {
+    StringBuilder html = new StringBuilder();
+    for (int i = 0; html.length() < 5 * StreamSanitizer.READ_LENGTH; i++) {
+      html.append("<a href='http://example.com/").append(i).append("'>").append(i);
+      html.append(" &amp; <b>bold</b> &#").append(i).append("; <script></a>\n");
+    }
+    String input = html.toString();
+
+    StringBuilder out = new StringBuilder();
+    SimpleHtmlSanitizer.getInstance().sanitize(new StringReader(input), out);
+    assertEquals(SimpleHtmlSanitizer.sanitizeHtml(input).asString(), out.toString());
+
+    out.setLength(0);
+    POLICY.sanitize(new StringReader(input), out);
+    assertEquals(POLICY.sanitize(input).asString(), out.toString());
+  }
+
+  public void testLongTokensAreEscaped() throws IOException {
+    StringBuilder title = new StringBuilder();
+    for (int i = 0; i < 2 * StreamSanitizer.MAX_TOKEN_LENGTH; i++) {
+      title.append('x');
+    }
+    String input = "<img alt=\"" + title + "\"><b>";
+    StringBuilder out = new StringBuilder();
+    POLICY.sanitize(new StringReader(input), out);
+    assertEquals(SafeHtmlUtils.htmlEscape("<img alt=\"" + title + "\">") + "<b>", out.toString());
+    assertEquals(POLICY.sanitize(input).asString(), out.toString());
+  }
+
+  public void testLongTokens_sameAsString() throws IOException {
+    assertEquals(StreamSanitizer.MAX_TOKEN_LENGTH, HtmlSanitizerPolicy.MAX_TAG_LENGTH);
+    String prefix = "<img alt=\"";
+    String suffix = "\">";
+    int maxTitleLength = StreamSanitizer.MAX_TOKEN_LENGTH - prefix.length() - suffix.length();
+    for (int titleLength = maxTitleLength - 1; titleLength <= maxTitleLength + 1; titleLength++) {
+      StringBuilder title = new StringBuilder();
+      for (int i = 0; i < titleLength; i++) {
+        title.append('x');
+      }
+      String input = "text " + prefix + title + suffix + " text";
+      StringBuilder out = new StringBuilder();
+      POLICY.sanitize(new StringReader(input), out);
+      assertEquals(POLICY.sanitize(input).asString(), out.toString());
+      assertEquals(titleLength <= maxTitleLength, out.indexOf("<img") != -1);
+    }
+  }
+
+  public void testWritesAsItGoes() throws IOException {
+    StringBuilder html = new StringBuilder();
+    while (html.length() < 4 * StreamSanitizer.READ_LENGTH) {
+      html.append("<b>text</b> ");
+    }
+    CountingAppendable out = new CountingAppendable();
+    POLICY.sanitize(new StringReader(html.toString()), out);
+    assertEquals(html.length(), out.length);
+    assertTrue(out.appends > 1);
+    int window = StreamSanitizer.READ_LENGTH + StreamSanitizer.MAX_TOKEN_LENGTH;
+    assertTrue(out.maxAppend <= 2 * window);
+  }
+
+  public void testEmpty() throws IOException {
+    StringBuilder out = new StringBuilder();
+    SimpleHtmlSanitizer.sanitizeHtml(new StringReader(""), out);
+    POLICY.sanitize(new StringReader(""), out);
+    assertEquals("", out.toString());
+  }
+
+  private static void assertSameAsString(String input) throws IOException {
+    StringBuilder out = new StringBuilder();
+    SimpleHtmlSanitizer.sanitizeHtml(new StringReader(input), out);
+    assertEquals(SimpleHtmlSanitizer.sanitizeHtml(input).asString(), out.toString());
+
+    out.setLength(0);
+    POLICY.sanitize(new StringReader(input), out);
+    assertEquals(POLICY.sanitize(input).asString(), out.toString());
+  }
+
+  private static String padding(int length) {
+    char[] chars = new char[length];
+    Arrays.fill(chars, 'x');
+    return new String(chars);
+  }
+
+  /** An appendable that only counts what is appended to it. */
+  private static class CountingAppendable implements Appendable {
+
+    int length;
+    int appends;
+    int maxAppend;
+
+    @Override
+    public Appendable append(CharSequence csq) {
+      length += csq.length();
+      appends++;
+      maxAppend = Math.max(maxAppend, csq.length());
+      return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+      return append(csq.subSequence(start, end));
+    }
+
+    @Override
+    public Appendable append(char c) {
+      return append(String.valueOf(c));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link Utf8HtmlEscaper}. */
+public class Utf8HtmlEscaperTest extends TestCase {
+
+  private static final String TEXT = "f\"bar '<&em>é€😀<e/m>oo&bar";
+
+  public void testEscape() {
+    ByteBuffer in = utf8(TEXT);
+    ByteBuffer out = ByteBuffer.allocate(256);
+    assertEquals(CoderResult.UNDERFLOW, Utf8HtmlEscaper.htmlEscape(in, out));
+    assertFalse(in.hasRemaining());
+    assertEquals(SafeHtmlUtils.htmlEscape(TEXT), decode(out));
+  }
+
+  public void testEscape_directBuffers() {
+    ByteBuffer in = ByteBuffer.allocateDirect(64);
+    in.put(utf8(TEXT)).flip();
+    ByteBuffer out = ByteBuffer.allocateDirect(256);
+    assertEquals(CoderResult.UNDERFLOW, Utf8HtmlEscaper.htmlEscape(in, out));
+    assertEquals(SafeHtmlUtils.htmlEscape(TEXT), decode(out));
+  }
+
+  public void testEscape_overflowAndResume() {
+    for (int capacity = Utf8HtmlEscaper.MAX_ESCAPE_LENGTH; capacity < 16; capacity++) {
+      ByteBuffer in = utf8(TEXT);
+      ByteBuffer out = ByteBuffer.allocate(capacity);
+      byte[] collected = new byte[0];
+      while (Utf8HtmlEscaper.htmlEscape(in, out) == CoderResult.OVERFLOW) {
+        collected = concat(collected, out);
+        out.clear();
+      }
+      collected = concat(collected, out);
+      assertEquals(SafeHtmlUtils.htmlEscape(TEXT), new String(collected, StandardCharsets.UTF_8));
+    }
+  }
+
+  public void testEscape_entityDoesNotFit() {
+    ByteBuffer in = utf8("a&b");
+    ByteBuffer out = ByteBuffer.allocate(4);
+    assertEquals(CoderResult.OVERFLOW, Utf8HtmlEscaper.htmlEscape(in, out));
+    assertEquals(1, in.position());
+    assertEquals(1, out.position());
+  }
+
+  private static ByteBuffer utf8(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decode(ByteBuffer out) {
+    out.flip();
+    return StandardCharsets.UTF_8.decode(out).toString();
+  }
+
+  private static byte[] concat(byte[] collected, ByteBuffer out) {
+    out.flip();
+    byte[] result = new byte[collected.length + out.remaining()];
+    System.arraycopy(collected, 0, result, 0, collected.length);
+    out.get(result, collected.length, out.remaining());
+    return result;
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.safehtml.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link Utf8SafeHtmlBuilder}. */
+public class Utf8SafeHtmlBuilderTest extends TestCase {
+
+  private static final String TEXT = "f\"bar '<&em>é€😀<e/m>oo&bar";
+
+  {
+    // Since we can't assume assertions are enabled, force
+    // SafeHtmlHostedModeUtils#maybeCheckCompleteHtml to perform its check
+    // when running in JRE.
+    SafeHtmlHostedModeUtils.setForceCheckCompleteHtml(true);
+  }
+
+  public void testEmpty() {
+    Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder();
+    assertEquals(0, b.size());
+    assertEquals(0, b.toByteArray().length);
+  }
+
+  public void testAppend() {
+    Utf8SafeHtmlBuilder b =
+        new Utf8SafeHtmlBuilder()
+            .appendHtmlConstant("<p title=\"€\">")
+            .appendEscaped(TEXT)
+            .appendEscaped(TEXT, 1, 9)
+            .append('<')
+            .append('é')
+            .append(true)
+            .append((byte) -1)
+            .append(1.5)
+            .append(2.5f)
+            .append(-3)
+            .append(4L)
+            .append(SafeHtmlUtils.fromSafeConstant("<br>"))
+            .append(
+                SafeHtmlUtils.concat(SafeHtmlUtils.fromString(TEXT), SafeHtmlUtils.EMPTY_SAFE_HTML))
+            .appendEscapedLines("a<b\r\nc\rd\ne")
+            .appendHtmlConstant("</p>");
+    SafeHtml expected =
+        new SafeHtmlBuilder()
+            .appendHtmlConstant("<p title=\"€\">")
+            .appendEscaped(TEXT)
+            .appendEscaped(TEXT, 1, 9)
+            .append('<')
+            .append('é')
+            .append(true)
+            .append((byte) -1)
+            .append(1.5)
+            .append(2.5f)
+            .append(-3)
+            .append(4L)
+            .append(SafeHtmlUtils.fromSafeConstant("<br>"))
+            .append(SafeHtmlUtils.fromString(TEXT))
+            .appendEscapedLines("a<b\r\nc\rd\ne")
+            .appendHtmlConstant("</p>")
+            .toSafeHtml();
+    assertEquals(expected.asString(), decode(b.toByteArray()));
+    assertEquals(utf8(expected.asString()).length, b.size());
+  }
+
+  public void testAppend_keptUtf8() {
+    SafeHtml header = SafeHtmlUtils.fromSafeConstant("<h1>Café</h1>");
+    SafeHtmlUtils.utf8Of(header);
+    ByteBufferPool pool = new ByteBufferPool(4, 8, false);
+    Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool);
+    b.append(header).append('€').append(header);
+    assertEquals("<h1>Café</h1>€<h1>Café</h1>", decode(b.toByteArray()));
+
+    // A pending high surrogate is completed by the chars, not by the kept bytes.
+    SafeHtml lowSurrogate = SafeHtmlUtils.fromSafeConstant("\uDE00");
+    SafeHtmlUtils.utf8Of(lowSurrogate);
+    b = new Utf8SafeHtmlBuilder().append('\uD83D').append(lowSurrogate);
+    assertEquals("😀", decode(b.toByteArray()));
+  }
+
+  public void testAppendHtmlConstant_withIncompleteHtml() {
+    try {
+      new Utf8SafeHtmlBuilder().appendHtmlConstant("<a href=\"");
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testSurrogates() {
+    assertEquals(
+        "😀",
+        decode(new Utf8SafeHtmlBuilder().append('\uD83D').append('\uDE00').toByteArray()));
+    assertEquals(
+        "a😀b",
+        decode(
+            new Utf8SafeHtmlBuilder()
+                .appendEscaped("a\uD83D")
+                .appendEscaped("\uDE00b")
+                .toByteArray()));
+    assertEquals(
+        "a\uD83Db\uDE00c\uD83D".getBytes(StandardCharsets.UTF_8),
+        new Utf8SafeHtmlBuilder().appendEscaped("a\uD83Db\uDE00c\uD83D").toByteArray());
+    assertEquals(
+        "\uD83D&lt;".getBytes(StandardCharsets.UTF_8),
+        new Utf8SafeHtmlBuilder().append('\uD83D').append('<').toByteArray());
+  }
+
+  public void testMatchesSafeHtmlBuilder() {
+    Random random = new Random(42);
+    char[] alphabet = "ab<>&\"' \né€😀".toCharArray();
+    ByteBufferPool pool = new ByteBufferPool(4, Utf8HtmlEscaper.MAX_ESCAPE_LENGTH, false);
+    for (int round = 0; round < 200; round++) {
+      StringBuilder text = new StringBuilder();
+      for (int i = random.nextInt(64); i > 0; i--) {
+        text.append(alphabet[random.nextInt(alphabet.length)]);
+      }
+      try (Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool)) {
+        b.appendEscaped(text.toString())
+            .appendHtmlConstant("<br>")
+            .appendEscapedLines(text.toString());
+        String expected =
+            new SafeHtmlBuilder()
+                .appendEscaped(text.toString())
+                .appendHtmlConstant("<br>")
+                .appendEscapedLines(text.toString())
+                .toSafeHtml()
+                .asString();
+        assertEquals(text.toString(), utf8(expected).length, b.size());
+        assertEquals(utf8(expected), b.toByteArray());
+      }
+    }
+  }
+
+  public void testDrainTo_outputStream() throws IOException {
+    for (boolean direct : new boolean[] {false, true}) {
+      ByteBufferPool pool = new ByteBufferPool(4, 8, direct);
+      Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool).appendEscaped(TEXT);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      b.drainTo(out);
+      assertEquals(SafeHtmlUtils.htmlEscape(TEXT), decode(out.toByteArray()));
+      assertEquals(0, b.size());
+      assertEquals(4, pool.size());
+
+      // The builder can be reused after draining.
+      out.reset();
+      b.appendHtmlConstant("<br>").drainTo(out);
+      assertEquals("<br>", decode(out.toByteArray()));
+    }
+  }
+
+  public void testDrainTo_channel() throws IOException {
+    ByteBufferPool pool = new ByteBufferPool(16, 8, true);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool).appendEscaped(TEXT);
+    b.drainTo(Channels.newChannel(out));
+    assertEquals(SafeHtmlUtils.htmlEscape(TEXT), decode(out.toByteArray()));
+    assertEquals(0, b.size());
+  }
+
+  public void testDrainTo_gatheringChannel() throws IOException {
+    ByteBufferPool pool = new ByteBufferPool(16, 8, false);
+    TrickleChannel channel = new TrickleChannel();
+    Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool).appendEscaped(TEXT);
+    b.drainTo(channel);
+    assertEquals(SafeHtmlUtils.htmlEscape(TEXT), decode(channel.out.toByteArray()));
+    assertTrue(channel.gatheringWrites > 1);
+    assertEquals(0, b.size());
+    assertEquals(pool.size(), channel.maxBuffersPerWrite);
+  }
+
+  public void testDrainTo_releasesBuffersOnFailure() {
+    ByteBufferPool pool = new ByteBufferPool(16, 8, false);
+    Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool).appendEscaped(TEXT);
+    try {
+      b.drainTo(
+          new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+              throw new IOException();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+              throw new IOException();
+            }
+          });
+      fail("Should have thrown IOException");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(0, b.size());
+    assertTrue(pool.size() > 1);
+  }
+
+  public void testClose() {
+    ByteBufferPool pool = new ByteBufferPool(16, 8, false);
+    Utf8SafeHtmlBuilder b = new Utf8SafeHtmlBuilder(pool).appendEscaped(TEXT);
+    b.close();
+    assertEquals(0, b.size());
+    assertTrue(pool.size() > 1);
+    assertEquals("&lt;", decode(b.append('<').toByteArray()));
+  }
+
+  private static byte[] utf8(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String decode(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void assertEquals(byte[] expected, byte[] actual) {
+    assertEquals(decode(expected), decode(actual));
+    assertTrue(Arrays.equals(expected, actual));
+  }
+
+  /** A gathering channel that writes at most 5 bytes at a time. */
+  private static class TrickleChannel implements GatheringByteChannel {
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int gatheringWrites;
+    int maxBuffersPerWrite;
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+      gatheringWrites++;
+      maxBuffersPerWrite = Math.max(maxBuffersPerWrite, length);
+      long written = 0;
+      for (int i = offset; i < offset + length && written < 5; i++) {
+        while (srcs[i].hasRemaining() && written < 5) {
+          out.write(srcs[i].get());
+          written++;
+        }
+      }
+      return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+      return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      return (int) write(new ByteBuffer[] {src}, 0, 1);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+  }
+}